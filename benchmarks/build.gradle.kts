@@ -0,0 +1,29 @@
+plugins {
+    id("java")
+    alias(libs.plugins.jmh)
+}
+
+dependencies {
+    jmh(project(":modlibrary"))
+    jmh(project(":modloader"))
+    // Synthetic modules come from the generator of the soak tests.
+    jmh(project(":soak"))
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(libs.versions.java.get())
+    }
+}
+
+repositories {
+    mavenCentral()
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+
+    // Report allocation rates next to the timings.
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+}
@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.benchmarks;
+
+import es.ylabs.clijavamodloader.annotations.Arg;
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.annotations.Flag;
+import es.ylabs.clijavamodloader.modloader.CommandBinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Compares a command with typed arguments, converted by the binder the loader
+ * generates for it, with the same command parsing a raw {@code String[]}.
+ * <p>
+ * Run with {@code -prof gc} to see the allocations of each call. A typed
+ * command without flags converts the {@code String[]} it's called with
+ * directly; one with flags allocates a single array to lay out its arguments.
+ * Only the array parameter is allocated besides that, as in the raw command.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ArgumentBindingBenchmark {
+
+    public enum Unit {
+        BYTES, KILOBYTES, MEGABYTES
+    }
+
+    @CliCommandGroup
+    public static class BenchmarkGroup {
+
+        private long total;
+
+        @CliCommand(command = "typed")
+        public void typed(@Flag("-v") boolean verbose, @Arg("count") int count, @Arg("unit") Unit unit,
+                          @Arg("sizes") long... sizes) {
+            total += verbose ? count : unit.ordinal();
+
+            for (long size : sizes) {
+                total += size;
+            }
+        }
+
+        @CliCommand(command = "typed-no-flags")
+        public void typedNoFlags(@Arg("count") int count, @Arg("unit") Unit unit, @Arg("sizes") long... sizes) {
+            total += count + unit.ordinal();
+
+            for (long size : sizes) {
+                total += size;
+            }
+        }
+
+        @CliCommand(command = "raw")
+        public void raw(String[] args) {
+            boolean verbose = false;
+            int first = 1;
+
+            if (args.length > 1 && args[1].equals("-v")) {
+                verbose = true;
+                first = 2;
+            }
+
+            if (args.length < first + 2) {
+                throw new IllegalArgumentException("Invalid arguments");
+            }
+
+            int count = Integer.parseInt(args[first]);
+            Unit unit = Unit.valueOf(args[first + 1].toUpperCase(Locale.ROOT));
+            total += verbose ? count : unit.ordinal();
+
+            for (int i = first + 2; i < args.length; i++) {
+                total += Long.parseLong(args[i]);
+            }
+        }
+    }
+
+    private final String[] typedArgs = {"typed", "-v", "42", "kilobytes", "1024", "2048", "4096"};
+    private final String[] typedNoFlagsArgs = {"typed-no-flags", "42", "kilobytes", "1024", "2048", "4096"};
+    private final String[] rawArgs = {"raw", "-v", "42", "kilobytes", "1024", "2048", "4096"};
+
+    private Consumer<String[]> typed;
+    private Consumer<String[]> typedNoFlags;
+    private Consumer<String[]> raw;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkGroup group = new BenchmarkGroup();
+
+        typed = CommandBinder.bind(BenchmarkGroup.class.getMethod("typed", boolean.class, int.class,
+                Unit.class, long[].class), group);
+        typedNoFlags = CommandBinder.bind(BenchmarkGroup.class.getMethod("typedNoFlags", int.class,
+                Unit.class, long[].class), group);
+        raw = CommandBinder.bind(BenchmarkGroup.class.getMethod("raw", String[].class), group);
+    }
+
+    @Benchmark
+    public void typedBinding() {
+        typed.accept(typedArgs);
+    }
+
+    @Benchmark
+    public void typedBindingWithoutFlags() {
+        typedNoFlags.accept(typedNoFlagsArgs);
+    }
+
+    @Benchmark
+    public void rawParsing() {
+        raw.accept(rawArgs);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.benchmarks;
+
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.modloader.CommandBinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Measures the cost of binding the commands of a group when its module is
+ * loaded, as the loader does for every group it finds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BindingBenchmark {
+
+    @CliCommandGroup
+    public static class BenchmarkGroup {
+
+        private long calls;
+
+        @CliCommand(command = "first")
+        public void first(String[] args) {
+            calls += args.length;
+        }
+
+        @CliCommand(command = "second")
+        public void second(String[] args) {
+            calls += args.length;
+        }
+
+        @CliCommand(command = "third")
+        public void third(String[] args) {
+            calls += args.length;
+        }
+
+        @CliCommand(command = "fourth")
+        public void fourth(String[] args) {
+            calls += args.length;
+        }
+
+        @CliCommand(command = "hidden")
+        void hidden(String[] args) {
+            calls += args.length;
+        }
+    }
+
+    @Benchmark
+    public Map<String, Consumer<String[]>> bind() throws Exception {
+        BenchmarkGroup group = new BenchmarkGroup();
+        Map<String, Consumer<String[]>> commands = new HashMap<>();
+
+        for (Method method : BenchmarkGroup.class.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(CliCommand.class)) {
+                commands.put(method.getAnnotation(CliCommand.class).command(),
+                        CommandBinder.bind(method, group));
+            }
+        }
+
+        return commands;
+    }
+
+    @Benchmark
+    public Map<String, Consumer<String[]>> bindReflective() {
+        BenchmarkGroup group = new BenchmarkGroup();
+        Map<String, Consumer<String[]>> commands = new HashMap<>();
+
+        // Same binding as the loader used before commands were bound.
+        for (Method method : BenchmarkGroup.class.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(CliCommand.class)) {
+                commands.put(method.getAnnotation(CliCommand.class).command(), consumer -> {
+                    try {
+                        method.invoke(group, (Object) consumer);
+                    } catch (Exception ignored) {
+                    }
+                });
+            }
+        }
+
+        return commands;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.benchmarks;
+
+import es.ylabs.clijavamodloader.commands.management.CommandCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and latency of {@link CommandCollection#executeCommand(String)},
+ * from tokenizing the command line to running the command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CommandExecutionBenchmark {
+
+    private static final String COMMAND = "bench";
+    private static final int MAX_ARGUMENTS = 64;
+
+    @Param({
+            "bench",
+            "bench first second third",
+            "bench   \"quoted argument\"  'another one'\tescaped\\ space"
+    })
+    public String commandLine;
+
+    private static volatile String[] sink;
+
+    private CommandCollection commandCollection;
+
+    @Setup
+    public void setup() throws Exception {
+        commandCollection = CommandCollection.INSTANCE.getInstance();
+        commandCollection.addCommands(Map.of(COMMAND, args -> {
+            // Never true, but keeps the arguments alive.
+            if (args.length > MAX_ARGUMENTS) {
+                sink = args;
+            }
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        commandCollection.removeCommands(List.of(COMMAND));
+    }
+
+    @Benchmark
+    public void execute() throws Exception {
+        commandCollection.executeCommand(commandLine);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void executeConcurrently() throws Exception {
+        commandCollection.executeCommand(commandLine);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.benchmarks;
+
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.modloader.CommandBinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Compares the reflective command dispatch used before commands were bound
+ * with the consumers created by {@link CommandBinder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DispatchBenchmark {
+
+    @CliCommandGroup
+    public static class BenchmarkGroup {
+
+        private long calls;
+
+        @CliCommand(command = "public")
+        public void publicCommand(String[] args) {
+            calls += args.length;
+        }
+
+        @CliCommand(command = "private")
+        private void privateCommand(String[] args) {
+            calls += args.length;
+        }
+    }
+
+    private final String[] args = { "command", "argument" };
+
+    private BenchmarkGroup group;
+    private Consumer<String[]> reflective;
+    private Consumer<String[]> lambda;
+    private Consumer<String[]> methodHandle;
+
+    @Setup
+    public void setup() throws Exception {
+        group = new BenchmarkGroup();
+
+        Method publicMethod = BenchmarkGroup.class.getDeclaredMethod("publicCommand", String[].class);
+        Method privateMethod = BenchmarkGroup.class.getDeclaredMethod("privateCommand", String[].class);
+
+        // Same dispatch as the loader used before commands were bound.
+        reflective = consumer -> {
+            try {
+                publicMethod.invoke(group, (Object) consumer);
+            } catch (Exception ignored) {
+            }
+        };
+        lambda = CommandBinder.bind(publicMethod, group);
+        methodHandle = CommandBinder.bind(privateMethod, group);
+    }
+
+    @Benchmark
+    public long direct() {
+        group.publicCommand(args);
+        return group.calls;
+    }
+
+    @Benchmark
+    public long reflective() {
+        reflective.accept(args);
+        return group.calls;
+    }
+
+    @Benchmark
+    public long lambda() {
+        lambda.accept(args);
+        return group.calls;
+    }
+
+    @Benchmark
+    public long methodHandle() {
+        methodHandle.accept(args);
+        return group.calls;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.benchmarks;
+
+import es.ylabs.clijavamodloader.modloader.LoaderCore;
+import es.ylabs.clijavamodloader.soak.SyntheticPluginGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full {@link LoaderCore#loadModule(String, String)} and
+ * {@link LoaderCore#unloadModule(String)} cycle against synthetic modules of
+ * different sizes, with and without a command index and a scan cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModuleLoadBenchmark {
+
+    private static final int GROUP_COUNT = 4;
+    private static final int COMMANDS_PER_GROUP = 10;
+
+    @Param({ "10", "1000", "5000" })
+    public int classCount;
+
+    @Param({ "true", "false" })
+    public boolean indexed;
+
+    @Param({ "true", "false" })
+    public boolean scanCache;
+
+    private LoaderCore loaderCore;
+    private Path directory;
+    private String module;
+
+    @Setup
+    public void setup() throws Exception {
+        loaderCore = LoaderCore.INSTANCE.getInstance();
+        directory = Files.createTempDirectory("module-load-benchmark");
+        module = "synthetic-" + classCount + (indexed ? "-indexed" : "") + ".jar";
+
+        SyntheticPluginGenerator.generate(directory, module, new SyntheticPluginGenerator.Shape(
+                classCount, GROUP_COUNT, COMMANDS_PER_GROUP, 0, indexed));
+    }
+
+    @Setup(Level.Invocation)
+    public void clearScanCache() throws Exception {
+        if (!scanCache) {
+            loaderCore.getModuleScanCache().clear();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        loaderCore.getModuleScanCache().invalidate(module);
+        SyntheticPluginGenerator.delete(directory);
+    }
+
+    @Benchmark
+    public boolean loadAndUnload() throws Exception {
+        loaderCore.loadModule(directory.toString(), module);
+        return loaderCore.unloadModule(module);
+    }
+}
@@ -5,6 +5,7 @@ plugins {
 
 dependencies {
     implementation(project(":modlibrary"))
+    annotationProcessor(project(":modlibrary"))
 }
 
 java {
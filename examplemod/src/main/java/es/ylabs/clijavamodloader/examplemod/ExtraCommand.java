@@ -26,12 +26,13 @@ package es.ylabs.clijavamodloader.examplemod;
 
 import es.ylabs.clijavamodloader.annotations.CliCommand;
 import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.output.CliOutput;
 
 @CliCommandGroup
 public class ExtraCommand {
 
     @CliCommand(command = "extra")
     public void extra(String[] args) {
-        System.out.println("extra");
+        CliOutput.println("extra");
     }
 }
@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.examplemod;
+
+import es.ylabs.clijavamodloader.annotations.Arg;
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.annotations.Flag;
+import es.ylabs.clijavamodloader.output.CliOutput;
+
+import java.util.Locale;
+
+@CliCommandGroup
+public class RepeatCommand {
+
+    public enum Style {
+        PLAIN, GREEN, RED, YELLOW
+    }
+
+    @CliCommand(command = "repeat")
+    public void repeat(@Flag("-u") boolean upperCase,
+                       @Arg("times") int times,
+                       @Arg("style") Style style,
+                       @Arg("words") String... words) {
+        String line = String.join(" ", words);
+
+        if (upperCase) {
+            line = line.toUpperCase(Locale.ROOT);
+        }
+
+        for (int i = 0; i < times; i++) {
+            switch (style) {
+                case PLAIN -> CliOutput.println(line);
+                case GREEN -> CliOutput.printGreenAndBold(line);
+                case RED -> CliOutput.printRedAndBold(line);
+                case YELLOW -> CliOutput.printYellowAndBold(line);
+            }
+        }
+    }
+}
@@ -26,12 +26,13 @@ package es.ylabs.clijavamodloader.examplemod;
 
 import es.ylabs.clijavamodloader.annotations.CliCommand;
 import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.output.CliOutput;
 
 @CliCommandGroup
 public class StatusCommand {
 
     @CliCommand(command = "status")
     public void status(String[] args) {
-        System.out.println("status");
+        CliOutput.println("status");
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.examplemod;
+
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.output.CliOutput;
+import es.ylabs.clijavamodloader.streams.RecordSink;
+
+import java.util.Iterator;
+
+@CliCommandGroup
+public class StreamCommands {
+
+    @CliCommand(command = "seq")
+    public void seq(String[] args, Iterator<String> input, RecordSink output) {
+        if (args.length != 2) {
+            CliOutput.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+            return;
+        }
+
+        long count = Long.parseLong(args[1]);
+
+        for (long i = 1; i <= count; i++) {
+            output.emit(Long.toString(i));
+        }
+    }
+
+    @CliCommand(command = "grep")
+    public void grep(String[] args, Iterator<String> input, RecordSink output) {
+        if (args.length != 2) {
+            CliOutput.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+            return;
+        }
+
+        while (input.hasNext()) {
+            String record = input.next();
+
+            if (record.contains(args[1])) {
+                output.emit(record);
+            }
+        }
+    }
+
+    @CliCommand(command = "count")
+    public void count(String[] args, Iterator<String> input, RecordSink output) {
+        long count = 0;
+
+        while (input.hasNext()) {
+            input.next();
+            count++;
+        }
+
+        output.emit(Long.toString(count));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A positional argument of a typed {@link CliCommand} method.
+ * <p>
+ * Instead of a raw {@code String[]}, a command method can take typed
+ * parameters, each one annotated with {@code @Arg} or {@link Flag}. Arguments
+ * are converted to {@code String}, {@code int}, {@code long}, {@code double},
+ * {@code boolean}, any enum (ignoring case) or {@link java.nio.file.Path}. The
+ * last parameter may be an array of any of those types, taking every argument
+ * left. The loader checks and converts the arguments before calling the
+ * method, and builds the usage and error messages from these annotations.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Arg {
+
+    /**
+     * Tells that an argument has no default value, so it's required.
+     */
+    String REQUIRED = "\u0000";
+
+    /**
+     * The name of the argument, shown in usage and error messages.
+     *
+     * @return The name.
+     */
+    String value();
+
+    /**
+     * The value of the argument when it's left out, converted like any other.
+     * Arguments with a default value must come after the required ones. An
+     * array parameter with a default value may take no arguments at all, and
+     * the default is ignored.
+     *
+     * @return The default value, or {@link #REQUIRED}.
+     */
+    String defaultValue() default REQUIRED;
+}
@@ -33,4 +33,26 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface CliCommand {
     String command();
+
+    /**
+     * Whether the command always prints the same for the same arguments, so
+     * the loader can replay its output instead of running it again.
+     *
+     * @return True if the output of the command can be cached.
+     */
+    boolean cacheable() default false;
+
+    /**
+     * How long a cached output is replayed, in milliseconds.
+     *
+     * @return The time to live of cached outputs.
+     */
+    long cacheTtlMillis() default 60_000;
+
+    /**
+     * How many different argument lists are cached at most.
+     *
+     * @return The maximum number of cached outputs.
+     */
+    int cacheMaxEntries() default 128;
 }
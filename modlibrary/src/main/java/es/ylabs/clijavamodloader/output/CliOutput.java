@@ -0,0 +1,976 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Buffered terminal output for commands.
+ * <p>
+ * Every thread writes to its own buffer. While a command runs, its output is
+ * only written to the terminal when the command finishes or the buffer fills
+ * up, instead of once per line. Outside commands, output is written at the end
+ * of every line. ANSI styles are encoded once, and are left out when the
+ * output isn't a terminal.
+ * <p>
+ * In structured mode, the output is written as JSON Lines for other programs
+ * to read: records written with {@link #beginRecord(String)} are objects of
+ * their own, and any other line is a {@code message} object with its text and
+ * a level taken from its style. Records are encoded straight into the buffer
+ * of the thread, without building intermediate strings.
+ * <p>
+ * Commands should print through this class rather than {@code System.out}.
+ * A command that prints its own error instead of throwing an exception should
+ * also call {@link #reportFailure()}, so the loader counts it as failed. How
+ * the output is routed is up to the loader alone, through {@link Control}.
+ */
+public final class CliOutput {
+
+    /**
+     * Text styles, with their ANSI escape codes already encoded.
+     */
+    public enum Style {
+        PLAIN("", "output"),
+        GREEN_BOLD("\u001B[32m\u001B[1m", "info"),
+        RED_BOLD("\u001B[31m\u001B[1m", "error"),
+        YELLOW_BOLD("\u001B[33m\u001B[1m", "warning");
+
+        private final byte[] prefix;
+        private final byte[] messagePrefix;
+
+        Style(String prefix, String level) {
+            this.prefix = prefix.getBytes(Charset.defaultCharset());
+            this.messagePrefix = ("{\"type\":\"message\",\"level\":\"" + level + "\",\"text\":\"")
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final byte[] RESET = "\u001B[0m".getBytes(Charset.defaultCharset());
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(Charset.defaultCharset());
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MESSAGE_END = "\"}\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RECORD_START = "{\"type\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RECORD_END = "}\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<OutputBuffer> BUFFERS = ThreadLocal.withInitial(OutputBuffer::new);
+    private static final Object TARGET_LOCK = new Object();
+
+    private static volatile OutputStream target = new FileOutputStream(FileDescriptor.out);
+    private static volatile Charset charset = Charset.defaultCharset();
+    private static volatile boolean colorEnabled = System.console() != null;
+    private static volatile boolean structured = false;
+    private static boolean controlTaken = false;
+
+    private CliOutput() {
+    }
+
+    /**
+     * Hands the hooks the loader runs commands with over to the loader. Only
+     * the first call succeeds, and the loader makes it at startup, before any
+     * module is loaded, so modules can't reach them.
+     *
+     * @return The hooks.
+     * @throws IllegalStateException If they have already been taken.
+     */
+    public static Control takeControl() {
+        synchronized (TARGET_LOCK) {
+            if (controlTaken) {
+                throw new IllegalStateException("The output is already controlled by the loader");
+            }
+
+            controlTaken = true;
+        }
+
+        return new Control();
+    }
+
+    public static Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Tells whether ANSI styles are written by the calling thread.
+     *
+     * @return True if styles are written.
+     */
+    public static boolean isColorEnabled() {
+        return BUFFERS.get().isColorEnabled();
+    }
+
+    /**
+     * Tells whether the output of the calling thread is written as JSON Lines.
+     * Commands may check it to write records instead of text meant for people.
+     *
+     * @return True if the output is structured.
+     */
+    public static boolean isStructured() {
+        return BUFFERS.get().isStructured();
+    }
+
+    /**
+     * Starts writing a record for the calling thread. In structured mode it's
+     * a JSON object with a {@code type} field; otherwise, a line with the type
+     * followed by {@code name=value} pairs. The record must be ended before
+     * anything else is printed by the thread.
+     *
+     * @param type The type of the record.
+     *
+     * @return The writer of the record, which is reused by the thread.
+     * @throws IllegalStateException If the thread is already writing a record.
+     */
+    public static RecordWriter beginRecord(String type) {
+        return BUFFERS.get().beginRecord(type);
+    }
+
+    public static void print(String text) {
+        BUFFERS.get().print(Style.PLAIN, text, false);
+    }
+
+    public static void println(String text) {
+        BUFFERS.get().print(Style.PLAIN, text, true);
+    }
+
+    public static void println(Style style, String text) {
+        BUFFERS.get().print(style, text, true);
+    }
+
+    public static void printGreenAndBold(String text) {
+        println(Style.GREEN_BOLD, text);
+    }
+
+    public static void printRedAndBold(String text) {
+        println(Style.RED_BOLD, text);
+    }
+
+    public static void printYellowAndBold(String text) {
+        println(Style.YELLOW_BOLD, text);
+    }
+
+    /**
+     * Tells the loader that the command running on the calling thread failed,
+     * when it prints its own error rather than throwing an exception.
+     */
+    public static void reportFailure() {
+        BUFFERS.get().failureReported = true;
+    }
+
+    /**
+     * Writes the buffered output of the calling thread.
+     */
+    public static void flush() {
+        BUFFERS.get().flush();
+    }
+
+    /**
+     * The hooks the loader runs commands with: where the output goes, how it's
+     * redirected, captured and batched, and the failures commands report.
+     * There is a single instance, returned by {@link #takeControl()}.
+     */
+    public static final class Control {
+
+        private Control() {
+        }
+
+        /**
+         * Sets where the output is written to. Meant to be called before any
+         * command runs.
+         *
+         * @param newTarget The stream the output is written to.
+         * @param newCharset The charset used to encode text.
+         * @param newColorEnabled Whether ANSI styles are written.
+         */
+        public void configure(OutputStream newTarget, Charset newCharset, boolean newColorEnabled) {
+            configure(newTarget, newCharset, newColorEnabled, false);
+        }
+
+        /**
+         * Sets where the output is written to and whether it's structured.
+         * Meant to be called before any command runs.
+         *
+         * @param newTarget The stream the output is written to.
+         * @param newCharset The charset used to encode text. Records are always
+         *                   encoded in UTF-8, so it should be UTF-8 too.
+         * @param newColorEnabled Whether ANSI styles are written. They never
+         *                        are in structured mode.
+         * @param newStructured Whether the output is written as JSON Lines.
+         */
+        public void configure(OutputStream newTarget, Charset newCharset, boolean newColorEnabled,
+                              boolean newStructured) {
+            target = newTarget;
+            charset = newCharset;
+            colorEnabled = newColorEnabled;
+            structured = newStructured;
+        }
+
+        /**
+         * Redirects the output of the calling thread to another stream, until
+         * {@link #resetRedirect()} is called, to send the output of a command
+         * to whoever requested it.
+         *
+         * @param threadTarget The stream the output of the thread is written to.
+         * @param threadColorEnabled Whether ANSI styles are written to it.
+         */
+        public void redirect(OutputStream threadTarget, boolean threadColorEnabled) {
+            redirect(threadTarget, threadColorEnabled, false);
+        }
+
+        /**
+         * Redirects the output of the calling thread to another stream, until
+         * {@link #resetRedirect()} is called, choosing whether it's structured.
+         *
+         * @param threadTarget The stream the output of the thread is written to.
+         * @param threadColorEnabled Whether ANSI styles are written to it.
+         * @param threadStructured Whether the output is written as JSON Lines.
+         */
+        public void redirect(OutputStream threadTarget, boolean threadColorEnabled, boolean threadStructured) {
+            OutputBuffer buffer = BUFFERS.get();
+
+            buffer.endTextLine();
+            buffer.flush();
+            buffer.threadTarget = threadTarget;
+            buffer.threadColorEnabled = threadColorEnabled;
+            buffer.threadStructured = threadStructured;
+        }
+
+        /**
+         * Writes the output of the calling thread to the shared stream again,
+         * after writing whatever was buffered to its redirected stream.
+         */
+        public void resetRedirect() {
+            OutputBuffer buffer = BUFFERS.get();
+
+            try {
+                buffer.endTextLine();
+                buffer.flush();
+            } finally {
+                buffer.threadTarget = null;
+            }
+        }
+
+        /**
+         * Wraps a task so that it writes its output wherever the calling thread
+         * writes its own: to the same redirected stream, with the same styles
+         * and structure, or to the shared stream if the calling thread isn't
+         * redirected. Meant for threads doing part of the work of a command,
+         * whose output would otherwise skip the redirect of the thread that
+         * started it. The redirected stream must then be safe to write from
+         * several threads.
+         *
+         * @param task The task.
+         *
+         * @return A task that runs the given one with the output of the calling thread.
+         */
+        public Runnable inheritOutput(Runnable task) {
+            OutputBuffer buffer = BUFFERS.get();
+            OutputStream inheritedTarget = buffer.threadTarget;
+
+            if (inheritedTarget == null) {
+                return task;
+            }
+
+            boolean inheritedColorEnabled = buffer.threadColorEnabled;
+            boolean inheritedStructured = buffer.threadStructured;
+
+            return () -> {
+                redirect(inheritedTarget, inheritedColorEnabled, inheritedStructured);
+
+                try {
+                    task.run();
+                } finally {
+                    resetRedirect();
+                }
+            };
+        }
+
+        /**
+         * Returns an output stream that writes to the buffer of the calling
+         * thread, so that {@code System.out} can be redirected through this
+         * class.
+         *
+         * @return The output stream.
+         */
+        public OutputStream asOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    BUFFERS.get().writeText(b);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) {
+                    BUFFERS.get().writeText(bytes, offset, length);
+                }
+
+                @Override
+                public void flush() {
+                    CliOutput.flush();
+                }
+            };
+        }
+
+        /**
+         * Starts capturing the output of the calling thread, on top of writing
+         * it as usual, until {@link Capture#stop()} is called. Captures can be
+         * nested, and must be stopped in the reverse order they were started.
+         *
+         * @return The capture.
+         */
+        public Capture startCapture() {
+            OutputBuffer buffer = BUFFERS.get();
+            Capture capture = new Capture(buffer, buffer.capture);
+            buffer.capture = capture;
+
+            return capture;
+        }
+
+        /**
+         * Writes bytes that are already encoded, such as a captured output.
+         *
+         * @param encoded The bytes to write.
+         */
+        public void write(byte[] encoded) {
+            BUFFERS.get().write(encoded, 0, encoded.length);
+        }
+
+        /**
+         * Tells whether the calling thread reported a failure since the last
+         * call to {@link #resetFailure()}.
+         *
+         * @return True if a failure was reported.
+         */
+        public boolean isFailureReported() {
+            return BUFFERS.get().failureReported;
+        }
+
+        /**
+         * Forgets the failure reported by the calling thread. Meant to be
+         * called before and after running a command.
+         *
+         * @return True if a failure was reported since the last call.
+         */
+        public boolean resetFailure() {
+            OutputBuffer buffer = BUFFERS.get();
+            boolean failureReported = buffer.failureReported;
+            buffer.failureReported = false;
+
+            return failureReported;
+        }
+
+        /**
+         * Starts buffering the output of the calling thread until the matching
+         * call to {@link #endBatch()}. Batches can be nested.
+         */
+        public void beginBatch() {
+            BUFFERS.get().batchDepth++;
+        }
+
+        /**
+         * Ends a batch started by {@link #beginBatch()}, writing the buffered
+         * output if it was the outermost one.
+         */
+        public void endBatch() {
+            OutputBuffer buffer = BUFFERS.get();
+
+            if (buffer.batchDepth > 0 && --buffer.batchDepth == 0) {
+                buffer.endTextLine();
+                buffer.flush();
+            }
+        }
+    }
+
+    /**
+     * The output of a thread since {@link Control#startCapture()} was called.
+     */
+    public static final class Capture {
+
+        private final OutputBuffer buffer;
+        private final Capture parent;
+        private final ByteArrayOutputStream captured;
+        private int start;
+
+        private Capture(OutputBuffer buffer, Capture parent) {
+            this.buffer = buffer;
+            this.parent = parent;
+            this.captured = new ByteArrayOutputStream();
+            this.start = buffer.bytes.position();
+        }
+
+        /**
+         * Stops capturing. Must be called by the thread that started it.
+         *
+         * @return The output written since the capture started.
+         * @throws IllegalStateException If a capture started later is still
+         *      running, or it's called from another thread.
+         */
+        public byte[] stop() {
+            if (BUFFERS.get() != buffer || buffer.capture != this) {
+                throw new IllegalStateException("Capture is not the innermost one of the calling thread");
+            }
+
+            // A structured message still being written is ended, so the
+            // capture holds whole JSON lines.
+            buffer.endTextLine();
+
+            // Whatever is still buffered belongs to the capture too, and is
+            // copied without writing it, so the batch isn't broken up.
+            captured.write(buffer.bytes.array(), start, buffer.bytes.position() - start);
+            buffer.capture = parent;
+
+            return captured.toByteArray();
+        }
+    }
+
+    /**
+     * Writes the fields of a record started by {@link #beginRecord(String)}.
+     * Null values are written as JSON nulls, and left out of text records.
+     */
+    public static final class RecordWriter {
+
+        private final OutputBuffer buffer;
+        private boolean open;
+        private boolean structured;
+
+        private RecordWriter(OutputBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public RecordWriter field(String name, String value) {
+            if (value == null) {
+                return nullField(name);
+            }
+
+            startField(name);
+
+            if (structured) {
+                buffer.putJsonString(value);
+            } else {
+                buffer.encode(quoteIfNeeded(value));
+            }
+
+            return this;
+        }
+
+        public RecordWriter field(String name, long value) {
+            startField(name);
+            buffer.putLong(value);
+            return this;
+        }
+
+        public RecordWriter field(String name, double value) {
+            if (structured && (Double.isNaN(value) || Double.isInfinite(value))) {
+                // JSON has no infinities nor NaN.
+                return nullField(name);
+            }
+
+            startField(name);
+            buffer.encode(Double.toString(value));
+            return this;
+        }
+
+        public RecordWriter field(String name, boolean value) {
+            startField(name);
+            buffer.put(value ? TRUE : FALSE, 0, value ? TRUE.length : FALSE.length);
+            return this;
+        }
+
+        /**
+         * Writes a field with a list of strings, which is a JSON array in
+         * structured mode and a comma-separated list otherwise.
+         *
+         * @param name The name of the field.
+         * @param values The strings.
+         *
+         * @return This writer.
+         */
+        public RecordWriter field(String name, Collection<String> values) {
+            if (values == null) {
+                return nullField(name);
+            }
+
+            startField(name);
+
+            if (structured) {
+                buffer.putByte('[');
+                boolean first = true;
+
+                for (String value : values) {
+                    if (!first) {
+                        buffer.putByte(',');
+                    }
+
+                    buffer.putJsonString(value);
+                    first = false;
+                }
+
+                buffer.putByte(']');
+            } else {
+                buffer.encode(quoteIfNeeded(String.join(",", values)));
+            }
+
+            return this;
+        }
+
+        /**
+         * Ends the record, writing it at once unless the thread is running a
+         * command.
+         */
+        public void end() {
+            checkOpen();
+            open = false;
+
+            if (structured) {
+                buffer.put(RECORD_END, 0, RECORD_END.length);
+            } else {
+                buffer.put(NEW_LINE, 0, NEW_LINE.length);
+            }
+
+            if (buffer.batchDepth == 0) {
+                buffer.flush();
+            }
+        }
+
+        private void begin(String type) {
+            if (open) {
+                throw new IllegalStateException("A record is already being written");
+            }
+
+            open = true;
+            structured = buffer.isStructured();
+            buffer.endTextLine();
+
+            if (structured) {
+                buffer.put(RECORD_START, 0, RECORD_START.length);
+                buffer.putJsonCharacters(type);
+                buffer.putByte('"');
+            } else {
+                buffer.encode(type);
+            }
+        }
+
+        private RecordWriter nullField(String name) {
+            if (structured) {
+                startField(name);
+                buffer.put(NULL, 0, NULL.length);
+            } else {
+                checkOpen();
+            }
+
+            return this;
+        }
+
+        private void startField(String name) {
+            checkOpen();
+
+            if (structured) {
+                buffer.putByte(',');
+                buffer.putJsonString(name);
+                buffer.putByte(':');
+            } else {
+                buffer.putByte(' ');
+                buffer.encode(name);
+                buffer.putByte('=');
+            }
+        }
+
+        private void checkOpen() {
+            if (!open) {
+                throw new IllegalStateException("No record is being written");
+            }
+        }
+
+        private static String quoteIfNeeded(String value) {
+            if (!value.isEmpty() && value.chars().noneMatch(c -> Character.isWhitespace(c) || c == '"')) {
+                return value;
+            }
+
+            return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+        }
+    }
+
+    private static final class OutputBuffer {
+
+        private final ByteBuffer bytes;
+        private CharsetEncoder encoder;
+        private int batchDepth;
+        private OutputStream threadTarget;
+        private boolean threadColorEnabled;
+        private boolean threadStructured;
+        private Capture capture;
+        private RecordWriter record;
+        private boolean textLineOpen;
+        private boolean failureReported;
+        private final byte[] digits = new byte[20];
+
+        private OutputBuffer() {
+            bytes = ByteBuffer.allocate(BUFFER_SIZE);
+            batchDepth = 0;
+        }
+
+        private RecordWriter beginRecord(String type) {
+            if (record == null) {
+                record = new RecordWriter(this);
+            }
+
+            record.begin(type);
+
+            return record;
+        }
+
+        private void print(Style style, String text, boolean newLine) {
+            if (isStructured()) {
+                printMessage(style, text, newLine);
+                return;
+            }
+
+            boolean styled = style != Style.PLAIN && isColorEnabled();
+
+            if (styled) {
+                put(style.prefix, 0, style.prefix.length);
+            }
+
+            encode(text);
+
+            if (styled) {
+                put(RESET, 0, RESET.length);
+            }
+
+            if (newLine) {
+                put(NEW_LINE, 0, NEW_LINE.length);
+            }
+
+            if (newLine && batchDepth == 0) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes text as a message. Plain text without a line break is
+         * continued by the next plain text, so lines printed piece by piece
+         * end up in a single message.
+         */
+        private void printMessage(Style style, String text, boolean newLine) {
+            if (style != Style.PLAIN) {
+                endTextLine();
+            }
+
+            if (!textLineOpen) {
+                put(style.messagePrefix, 0, style.messagePrefix.length);
+                textLineOpen = true;
+            }
+
+            putJsonCharacters(text);
+
+            if (newLine) {
+                endTextLine();
+
+                if (batchDepth == 0) {
+                    flush();
+                }
+            }
+        }
+
+        /**
+         * Writes text that is already encoded, such as the one printed through
+         * {@code System.out}. In structured mode, every line of it becomes a
+         * message.
+         */
+        private void writeText(int b) {
+            if (!isStructured()) {
+                write(b);
+            } else if (b == '\n') {
+                if (!textLineOpen) {
+                    put(Style.PLAIN.messagePrefix, 0, Style.PLAIN.messagePrefix.length);
+                }
+
+                textLineOpen = true;
+                endTextLine();
+
+                if (batchDepth == 0) {
+                    flush();
+                }
+            } else if (b != '\r') {
+                if (!textLineOpen) {
+                    put(Style.PLAIN.messagePrefix, 0, Style.PLAIN.messagePrefix.length);
+                    textLineOpen = true;
+                }
+
+                putJsonByte(b & 0xFF);
+            }
+        }
+
+        private void writeText(byte[] source, int offset, int length) {
+            if (!isStructured()) {
+                write(source, offset, length);
+                return;
+            }
+
+            for (int i = offset; i < offset + length; i++) {
+                writeText(source[i]);
+            }
+        }
+
+        private void endTextLine() {
+            if (textLineOpen) {
+                textLineOpen = false;
+                put(MESSAGE_END, 0, MESSAGE_END.length);
+            }
+        }
+
+        private void write(int b) {
+            if (!bytes.hasRemaining()) {
+                flush();
+            }
+
+            bytes.put((byte) b);
+
+            if (b == '\n' && batchDepth == 0) {
+                flush();
+            }
+        }
+
+        private void write(byte[] source, int offset, int length) {
+            put(source, offset, length);
+
+            if (batchDepth == 0) {
+                for (int i = offset; i < offset + length; i++) {
+                    if (source[i] == '\n') {
+                        flush();
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void put(byte[] source, int offset, int length) {
+            while (length > 0) {
+                if (!bytes.hasRemaining()) {
+                    flush();
+                }
+
+                int chunk = Math.min(length, bytes.remaining());
+                bytes.put(source, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        private void putByte(int b) {
+            if (!bytes.hasRemaining()) {
+                flush();
+            }
+
+            bytes.put((byte) b);
+        }
+
+        private void putLong(long value) {
+            if (value == Long.MIN_VALUE) {
+                encode(Long.toString(value));
+                return;
+            }
+
+            if (value < 0) {
+                putByte('-');
+                value = -value;
+            }
+
+            int position = digits.length;
+
+            do {
+                digits[--position] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+
+            put(digits, position, digits.length - position);
+        }
+
+        private void putJsonString(String text) {
+            putByte('"');
+            putJsonCharacters(text);
+            putByte('"');
+        }
+
+        /**
+         * Writes the characters of a JSON string, escaped and encoded in
+         * UTF-8 whatever the charset of the output.
+         */
+        private void putJsonCharacters(String text) {
+            int length = text.length();
+
+            for (int i = 0; i < length; i++) {
+                char character = text.charAt(i);
+
+                if (character < 0x80) {
+                    putJsonByte(character);
+                } else if (character < 0x800) {
+                    putByte(0xC0 | (character >> 6));
+                    putByte(0x80 | (character & 0x3F));
+                } else if (Character.isHighSurrogate(character) && i + 1 < length
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(character, text.charAt(++i));
+
+                    putByte(0xF0 | (codePoint >> 18));
+                    putByte(0x80 | ((codePoint >> 12) & 0x3F));
+                    putByte(0x80 | ((codePoint >> 6) & 0x3F));
+                    putByte(0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(character)) {
+                    // An unpaired surrogate can't be encoded, so it's replaced.
+                    putByte(0xEF);
+                    putByte(0xBF);
+                    putByte(0xBD);
+                } else {
+                    putByte(0xE0 | (character >> 12));
+                    putByte(0x80 | ((character >> 6) & 0x3F));
+                    putByte(0x80 | (character & 0x3F));
+                }
+            }
+        }
+
+        private void putJsonByte(int b) {
+            switch (b) {
+                case '"', '\\' -> {
+                    putByte('\\');
+                    putByte(b);
+                }
+                case '\n' -> {
+                    putByte('\\');
+                    putByte('n');
+                }
+                case '\r' -> {
+                    putByte('\\');
+                    putByte('r');
+                }
+                case '\t' -> {
+                    putByte('\\');
+                    putByte('t');
+                }
+                default -> {
+                    if (b < 0x20 || b == 0x7F) {
+                        putByte('\\');
+                        putByte('u');
+                        putByte('0');
+                        putByte('0');
+                        putByte(HEX_DIGITS[b >> 4]);
+                        putByte(HEX_DIGITS[b & 0xF]);
+                    } else {
+                        putByte(b);
+                    }
+                }
+            }
+        }
+
+        private void encode(String text) {
+            int length = text.length();
+            int position = 0;
+
+            // ASCII is copied as is, which covers most command output.
+            while (position < length && text.charAt(position) < 0x80) {
+                if (!bytes.hasRemaining()) {
+                    flush();
+                }
+
+                bytes.put((byte) text.charAt(position++));
+            }
+
+            if (position < length) {
+                encodeWithCharset(CharBuffer.wrap(text, position, length));
+            }
+        }
+
+        private void encodeWithCharset(CharBuffer chars) {
+            if (encoder == null || !encoder.charset().equals(charset)) {
+                encoder = charset.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+
+            encoder.reset();
+
+            CoderResult result;
+
+            do {
+                result = encoder.encode(chars, bytes, true);
+
+                if (result.isOverflow()) {
+                    flush();
+                }
+            } while (result.isOverflow());
+
+            while (encoder.flush(bytes).isOverflow()) {
+                flush();
+            }
+        }
+
+        private boolean isColorEnabled() {
+            return !isStructured() && (threadTarget != null ? threadColorEnabled : colorEnabled);
+        }
+
+        private boolean isStructured() {
+            return threadTarget != null ? threadStructured : structured;
+        }
+
+        private void flush() {
+            if (bytes.position() == 0) {
+                return;
+            }
+
+            for (Capture current = capture; current != null; current = current.parent) {
+                current.captured.write(bytes.array(), current.start, bytes.position() - current.start);
+                current.start = 0;
+            }
+
+            try {
+                if (threadTarget != null) {
+                    threadTarget.write(bytes.array(), 0, bytes.position());
+                    threadTarget.flush();
+                } else {
+                    synchronized (TARGET_LOCK) {
+                        target.write(bytes.array(), 0, bytes.position());
+                        target.flush();
+                    }
+                }
+            } catch (IOException ignored) {
+                // There is nowhere else to report it.
+            } finally {
+                bytes.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.processing;
+
+import es.ylabs.clijavamodloader.annotations.Arg;
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.annotations.Flag;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Annotation processor that writes a command index into the module JAR.
+ * <p>
+ * The index lets the loader load only the classes annotated with
+ * {@link CliCommandGroup} instead of every class bundled in the JAR. Each line
+ * holds the binary name of a group class followed by its commands, all of them
+ * separated by tabs, and each command written as {@code command=method}.
+ */
+@SupportedAnnotationTypes({
+        "es.ylabs.clijavamodloader.annotations.CliCommandGroup",
+        "es.ylabs.clijavamodloader.annotations.CliCommand"
+})
+public class CommandIndexProcessor extends AbstractProcessor {
+
+    public static final String INDEX_FILE = "META-INF/cli-commands.idx";
+    public static final String INDEX_HEADER = "# cli-java-modloader command index v1";
+
+    private final Map<String, Map<String, String>> groups = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+        } else {
+            for (Element element : roundEnv.getElementsAnnotatedWith(CliCommandGroup.class)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    addGroup((TypeElement) element);
+                } else {
+                    error(element, "@CliCommandGroup can only be applied to classes");
+                }
+            }
+
+            for (Element element : roundEnv.getElementsAnnotatedWith(CliCommand.class)) {
+                if (element.getEnclosingElement().getAnnotation(CliCommandGroup.class) == null) {
+                    error(element, "@CliCommand methods must be declared in a @CliCommandGroup class");
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void addGroup(TypeElement groupClass) {
+        String className = processingEnv.getElementUtils().getBinaryName(groupClass).toString();
+        Map<String, String> commands = new LinkedHashMap<>();
+
+        for (ExecutableElement method : ElementFilter.methodsIn(groupClass.getEnclosedElements())) {
+            CliCommand cliCommand = method.getAnnotation(CliCommand.class);
+
+            if (cliCommand != null) {
+                String command = cliCommand.command();
+
+                if (command.isBlank() || command.chars().anyMatch(Character::isWhitespace)
+                        || command.indexOf('=') >= 0) {
+                    error(method, "Invalid command name \"" + command + "\"");
+                } else if (method.getModifiers().contains(Modifier.STATIC)) {
+                    error(method, "@CliCommand methods can't be static");
+                } else if (cliCommand.cacheable()
+                        && (cliCommand.cacheTtlMillis() <= 0 || cliCommand.cacheMaxEntries() <= 0)) {
+                    error(method, "Cacheable commands need a positive TTL and maximum number of entries");
+                } else if (checkTypedParameters(method)
+                        && commands.putIfAbsent(command, method.getSimpleName().toString()) != null) {
+                    error(method, "Duplicate command \"" + command + "\" in " + className);
+                }
+            }
+        }
+
+        groups.put(className, commands);
+    }
+
+    /**
+     * Checks the parameters of a typed command method, which is one without
+     * parameters or with any parameter annotated with {@link Arg} or
+     * {@link Flag}. Types are checked by the loader, which knows which ones it
+     * can convert.
+     *
+     * @param method The command method.
+     *
+     * @return True if the method isn't typed or its parameters are valid.
+     */
+    private boolean checkTypedParameters(ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        boolean typed = parameters.isEmpty() || parameters.stream().anyMatch(parameter ->
+                parameter.getAnnotation(Arg.class) != null || parameter.getAnnotation(Flag.class) != null);
+        boolean valid = true;
+
+        if (typed) {
+            for (VariableElement parameter : parameters) {
+                Flag flag = parameter.getAnnotation(Flag.class);
+
+                if (flag != null && parameter.asType().getKind() != TypeKind.BOOLEAN) {
+                    error(parameter, "@Flag parameters must be boolean");
+                    valid = false;
+                } else if (flag == null && parameter.getAnnotation(Arg.class) == null) {
+                    error(parameter, "Parameters of typed @CliCommand methods need @Arg or @Flag");
+                    valid = false;
+                }
+            }
+        }
+
+        return valid;
+    }
+
+    private void writeIndex() {
+        if (groups.isEmpty()) {
+            return;
+        }
+
+        List<Element> originatingElements = new ArrayList<>();
+
+        for (String className : groups.keySet()) {
+            TypeElement element = processingEnv.getElementUtils()
+                    .getTypeElement(className.replace('$', '.'));
+
+            if (element != null) {
+                originatingElements.add(element);
+            }
+        }
+
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT,
+                    "", INDEX_FILE, originatingElements.toArray(new Element[0]));
+
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(),
+                    StandardCharsets.UTF_8)) {
+                writer.write(INDEX_HEADER);
+                writer.write('\n');
+
+                for (Map.Entry<String, Map<String, String>> group : groups.entrySet()) {
+                    StringBuilder line = new StringBuilder(group.getKey());
+
+                    group.getValue().forEach((command, method) ->
+                            line.append('\t').append(command).append('=').append(method));
+
+                    writer.write(line.append('\n').toString());
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write " + INDEX_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
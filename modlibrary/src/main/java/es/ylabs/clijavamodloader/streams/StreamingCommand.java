@@ -0,0 +1,52 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.streams;
+
+import java.util.Iterator;
+
+/**
+ * A command that processes a stream of records.
+ * <p>
+ * A {@link es.ylabs.clijavamodloader.annotations.CliCommand} method taking
+ * {@code (String[], Iterator<String>, RecordSink)} is bound as a streaming
+ * command. In {@code cmd1 | cmd2 | cmd3}, every command runs concurrently: it
+ * reads the records written by the previous one, one at a time, and writes its
+ * own records for the next one. Commands taking only a {@code String[]} can be
+ * piped too: they get no input, and every line they print is a record.
+ */
+@FunctionalInterface
+public interface StreamingCommand {
+
+    /**
+     * Runs the command.
+     *
+     * @param args The command and its arguments.
+     * @param input The records written by the previous command, or none if it
+     *              isn't piped. {@link Iterator#hasNext()} blocks until the
+     *              next record arrives or the previous command finishes.
+     * @param output Where the records of the command are written.
+     */
+    void run(String[] args, Iterator<String> input, RecordSink output);
+}
@@ -10,6 +10,9 @@ application {
 dependencies {
     implementation(libs.snakeyaml)
     implementation(project(":modlibrary"))
+
+    testImplementation(libs.junit.jupiter)
+    testRuntimeOnly(libs.junit.platform.launcher)
 }
 
 java {
@@ -44,6 +47,68 @@ tasks {
         from(contents)
     }
 
+    // AppCDS distribution: the standalone JAR, its launcher and a dynamic CDS
+    // archive dumped at the end of a training session.
+    val cdsDirectory = layout.buildDirectory.dir("cds")
+
+    val cdsDistribution = register<Copy>("cdsDistribution") {
+        group = "distribution"
+        description = "Copies the standalone JAR, its AppCDS launcher and the daemon client to build/cds."
+
+        from(standaloneJar) {
+            rename { "modloader.jar" }
+        }
+        from("src/cds") {
+            include("modloader", "modloader-client")
+            filePermissions {
+                unix("rwxr-xr-x")
+            }
+        }
+        into(cdsDirectory)
+    }
+
+    register<JavaExec>("cdsArchive") {
+        group = "distribution"
+        description = "Runs a training session and dumps an AppCDS archive for the standalone JAR."
+
+        val exampleModule = project(":examplemod").tasks.named<Jar>("jar").flatMap { it.archiveFile }
+        val trainingTemplate = layout.projectDirectory.file("src/cds/training.cli")
+        val trainingScript = layout.buildDirectory.file("cds-training/training.cli")
+        val archive = cdsDirectory.map { it.file("modloader.jsa") }
+
+        dependsOn(cdsDistribution)
+        inputs.file(exampleModule)
+        inputs.file(trainingTemplate)
+        outputs.file(archive)
+
+        javaLauncher = javaToolchains.launcherFor {
+            languageVersion = JavaLanguageVersion.of(libs.versions.java.get())
+        }
+        classpath = files(cdsDirectory.map { it.file("modloader.jar") })
+        mainClass = application.mainClass
+        args("--batch", trainingScript.get().asFile.path, "--fail-fast")
+        jvmArgs(
+            "-XX:ArchiveClassesAtExit=" + archive.get().asFile.path,
+            "-Xlog:cds=off", "-Xlog:cds+dynamic=off"
+        )
+
+        doFirst {
+            val module = exampleModule.get().asFile
+
+            archive.get().asFile.delete()
+            trainingScript.get().asFile.apply {
+                parentFile.mkdirs()
+                writeText(trainingTemplate.asFile.readText()
+                    .replace("@EXAMPLE_MODULE_PATH@", module.path)
+                    .replace("@EXAMPLE_MODULE@", module.name))
+            }
+        }
+    }
+
+    test {
+        useJUnitPlatform()
+    }
+
     build {
         dependsOn(standaloneJar)
     }
@@ -24,12 +24,25 @@
 
 package es.ylabs.clijavamodloader;
 
+import es.ylabs.clijavamodloader.commands.management.BatchRunner;
 import es.ylabs.clijavamodloader.commands.management.CommandCollection;
+import es.ylabs.clijavamodloader.commands.management.JobManager;
+import es.ylabs.clijavamodloader.commands.management.SessionExitException;
 import es.ylabs.clijavamodloader.commands.coregroups.HelpersGroup;
+import es.ylabs.clijavamodloader.commands.coregroups.JobsGroup;
+import es.ylabs.clijavamodloader.commands.coregroups.StatsGroup;
+import es.ylabs.clijavamodloader.daemon.DaemonServer;
 import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+import es.ylabs.clijavamodloader.helpers.OutputControl;
 import es.ylabs.clijavamodloader.helpers.ReadString;
+import es.ylabs.clijavamodloader.helpers.StartupTimer;
 import es.ylabs.clijavamodloader.modloader.LoaderCommands;
+import es.ylabs.clijavamodloader.modloader.LoaderCore;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -37,39 +50,143 @@ import java.util.function.Consumer;
 
 public class App {
     public static void main(String[] args) {
+        StartupTimer startupTimer = StartupTimer.INSTANCE.getInstance();
         CommandCollection commandCollection = CommandCollection.INSTANCE.getInstance();
-        ReadString readString = new ReadString("$ ");
+        LaunchOptions launchOptions = null;
 
         try {
-            HelpersGroup helpersGroup = new HelpersGroup();
+            launchOptions = LaunchOptions.parse(args);
+            startupTimer.mark("options");
+
+            configureOutput(launchOptions.color(), launchOptions.json());
+            startupTimer.mark("output");
+
+            // The daemon is shared by its sessions, so exit only ends the
+            // session that runs it.
+            HelpersGroup helpersGroup = launchOptions.daemon()
+                    ? new HelpersGroup(() -> {
+                        throw new SessionExitException();
+                    })
+                    : new HelpersGroup();
             LoaderCommands loaderGroup = new LoaderCommands();
+            StatsGroup statsGroup = new StatsGroup();
+            JobsGroup jobsGroup = new JobsGroup();
 
             Map<String, Consumer<String[]>> newCommands = new HashMap<>();
 
             newCommands.put("clear", helpersGroup::clear);
+            newCommands.put("complete", helpersGroup::complete);
             newCommands.put("exit", helpersGroup::exit);
+            newCommands.put("history", helpersGroup::history);
+            newCommands.put("jobs", jobsGroup::jobs);
+            newCommands.put("kill", jobsGroup::kill);
             newCommands.put("lsmod", loaderGroup::lsmod);
+            newCommands.put("modcache", loaderGroup::modcache);
+            newCommands.put("modlimit", loaderGroup::modlimit);
             newCommands.put("modprobe", loaderGroup::modprobe);
+            newCommands.put("modwatch", loaderGroup::modwatch);
             newCommands.put("rmmod", loaderGroup::rmmod);
+            newCommands.put("stats", statsGroup::stats);
+            newCommands.put("wait", jobsGroup::waitJob);
 
             commandCollection.addCommands(newCommands);
+            startupTimer.mark("core commands");
+
+            if (launchOptions.watch()) {
+                LoaderCore.INSTANCE.getInstance().startWatching();
+                startupTimer.mark("watcher");
+            } else {
+                loadConfigurationInBackground();
+            }
         } catch (Exception e) {
             ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
                     "UNKNOWN ERROR"));
             System.exit(-1);
         }
 
-        while (true) {
-            String command = readString.readString();
+        startupTimer.mark("ready");
+
+        if (launchOptions.startupReport()) {
+            startupTimer.printReport();
+        }
+
+        if (launchOptions.daemon()) {
+            runDaemon(commandCollection, launchOptions);
+        } else if (launchOptions.batch()) {
+            runBatch(commandCollection, launchOptions);
+        } else {
+            runInteractive(commandCollection);
+        }
+    }
+
+    private static void loadConfigurationInBackground() {
+        // The configuration isn't needed until a module is loaded, so it's
+        // read while the first command is typed. Errors are reported by the
+        // first command that needs it.
+        Thread.ofVirtual().name("configuration-loader").start(() -> {
+            try {
+                LoaderCore.INSTANCE.getInstance().loadConfiguration();
+            } catch (RuntimeException ignored) {
+            }
+        });
+    }
+
+    private static void configureOutput(boolean colorEnabled, boolean json) {
+        // JSON Lines are always encoded in UTF-8.
+        Charset charset = json ? StandardCharsets.UTF_8 : System.out.charset();
+
+        OutputControl.get().configure(JobManager.INSTANCE.getInstance().getOutputStream(), charset,
+                colorEnabled, json);
+        System.setOut(new PrintStream(OutputControl.get().asOutputStream(), false, charset));
+    }
 
-            if (!command.isBlank()) {
-                try {
-                    commandCollection.executeCommand(command);
-                } catch (Exception e) {
-                    ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
-                            "UNKNOWN ERROR"));
+    private static void runDaemon(CommandCollection commandCollection, LaunchOptions launchOptions) {
+        DaemonServer daemonServer = new DaemonServer(commandCollection, launchOptions.socketPath());
+
+        try {
+            daemonServer.run();
+        } catch (Exception e) {
+            ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                    "UNKNOWN ERROR"));
+            System.exit(-1);
+        }
+    }
+
+    private static void runBatch(CommandCollection commandCollection, LaunchOptions launchOptions) {
+        BatchRunner batchRunner = new BatchRunner(commandCollection, launchOptions.failFast());
+
+        try {
+            long failed = batchRunner.run(launchOptions.scriptFile());
+            System.exit(failed == 0 ? 0 : 1);
+        } catch (Exception e) {
+            ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                    "UNKNOWN ERROR"));
+            System.exit(-1);
+        }
+    }
+
+    private static void runInteractive(CommandCollection commandCollection) {
+        ReadString readString = new ReadString("$ ", commandCollection::completeCommand);
+        String command;
+
+        try {
+            while ((command = readString.readString()) != null) {
+                if (!command.isBlank()) {
+                    try {
+                        commandCollection.executeCommand(command);
+                    } catch (Exception e) {
+                        ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                                "UNKNOWN ERROR"));
+                    }
                 }
             }
+
+            // Leave the terminal on a new line after the last prompt.
+            System.out.println();
+        } catch (IOException e) {
+            ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                    "UNKNOWN ERROR"));
+            System.exit(-1);
         }
     }
 }
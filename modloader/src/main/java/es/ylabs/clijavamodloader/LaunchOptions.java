@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader;
+
+/**
+ * Command line options of the application.
+ *
+ * @param batch Whether commands are read in batch mode instead of interactively.
+ * @param scriptFile The file to read commands from in batch mode, or null to
+ *                   read them from the standard input.
+ * @param failFast Whether batch mode stops at the first failing command.
+ * @param watch Whether loaded modules are reloaded when their JAR files change.
+ * @param color Whether the output is styled with ANSI escape codes.
+ * @param json Whether the output is written as JSON Lines for other programs.
+ * @param startupReport Whether to print how long each phase of the startup took.
+ * @param daemon Whether commands are served to clients over a socket instead.
+ * @param socketPath The socket the daemon listens on, or null to use the
+ *                   default one.
+ */
+public record LaunchOptions(boolean batch, String scriptFile, boolean failFast, boolean watch, boolean color,
+                            boolean json, boolean startupReport, boolean daemon, String socketPath) {
+
+    private static final String OPTION_BATCH = "--batch";
+    private static final String OPTION_INTERACTIVE = "--interactive";
+    private static final String OPTION_FAIL_FAST = "--fail-fast";
+    private static final String OPTION_CONTINUE_ON_ERROR = "--continue-on-error";
+    private static final String OPTION_WATCH = "--watch";
+    private static final String OPTION_COLOR = "--color";
+    private static final String OPTION_NO_COLOR = "--no-color";
+    private static final String OPTION_JSON = "--json";
+    private static final String OPTION_STARTUP_REPORT = "--startup-report";
+    private static final String OPTION_DAEMON = "--daemon";
+
+    /**
+     * Parses the command line options. Batch mode is used when it is requested
+     * or when there is no console attached, unless interactive mode is forced.
+     * The same goes for styled output, which is only used with a console and
+     * never with JSON output.
+     *
+     * @param args The command line arguments.
+     *
+     * @return The parsed options.
+     * @throws Exception If an option is unknown.
+     */
+    public static LaunchOptions parse(String[] args) throws Exception {
+        Boolean batch = null;
+        String scriptFile = null;
+        boolean failFast = false;
+        boolean watch = false;
+        Boolean color = null;
+        boolean json = false;
+        boolean startupReport = false;
+        boolean daemon = false;
+        String socketPath = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case OPTION_BATCH -> {
+                    batch = true;
+
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        scriptFile = args[++i];
+                    }
+                }
+                case OPTION_INTERACTIVE -> batch = false;
+                case OPTION_FAIL_FAST -> failFast = true;
+                case OPTION_CONTINUE_ON_ERROR -> failFast = false;
+                case OPTION_WATCH -> watch = true;
+                case OPTION_COLOR -> color = true;
+                case OPTION_NO_COLOR -> color = false;
+                case OPTION_JSON -> json = true;
+                case OPTION_STARTUP_REPORT -> startupReport = true;
+                case OPTION_DAEMON -> {
+                    daemon = true;
+
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        socketPath = args[++i];
+                    }
+                }
+                default -> throw new Exception("Unknown option " + args[i]);
+            }
+        }
+
+        if (batch == null) {
+            batch = System.console() == null;
+        }
+
+        if (color == null) {
+            color = System.console() != null;
+        }
+
+        return new LaunchOptions(batch, scriptFile, failFast, watch, color && !json, json, startupReport,
+                daemon, socketPath);
+    }
+}
@@ -26,22 +26,89 @@ package es.ylabs.clijavamodloader.commands.coregroups;
 
 import es.ylabs.clijavamodloader.annotations.CliCommand;
 import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.commands.management.CommandCollection;
+import es.ylabs.clijavamodloader.commands.management.SessionExitException;
 import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+import es.ylabs.clijavamodloader.helpers.CommandHistory;
+import es.ylabs.clijavamodloader.output.CliOutput;
+
+import java.util.List;
+import java.util.Locale;
 
 @CliCommandGroup
 public class HelpersGroup {
 
     private final String COMMAND_CLEAR = "clear";
+    private final String COMMAND_COMPLETE = "complete";
     private final String COMMAND_EXIT = "exit";
+    private final String COMMAND_HISTORY = "history";
+
+    private final String ACTION_CLEAR = "clear";
+
+    private final Runnable exitAction;
+
+    public HelpersGroup() {
+        this(() -> System.exit(0));
+    }
+
+    /**
+     * Creates the group with its own way of exiting.
+     *
+     * @param exitAction What {@code exit} does after saying goodbye, such as
+     *                   throwing a {@link SessionExitException} to end a
+     *                   daemon session instead of the daemon.
+     */
+    public HelpersGroup(Runnable exitAction) {
+        this.exitAction = exitAction;
+    }
 
     @CliCommand(command = COMMAND_CLEAR)
     public void clear(String[] args) {
-        System.out.print(ANSIHelpers.ANSI_CLEAR);
+        if (CliOutput.isColorEnabled()) {
+            CliOutput.print(ANSIHelpers.ANSI_CLEAR);
+        }
+    }
+
+    @CliCommand(command = COMMAND_COMPLETE)
+    public void complete(String[] args) {
+        if (args.length <= 2) {
+            CommandCollection commandCollection = CommandCollection.INSTANCE.getInstance();
+            List<String> completions = commandCollection.completeCommand(args.length == 2 ? args[1] : "");
+
+            if (!completions.isEmpty()) {
+                completions.forEach(CliOutput::println);
+            } else if (args.length == 2 && !commandCollection.suggestCommands(args[1]).isEmpty()) {
+                ANSIHelpers.printYellowAndBold("No commands found, did you mean "
+                        + String.join(", ", commandCollection.suggestCommands(args[1])) + "?");
+            } else {
+                ANSIHelpers.printRedAndBold("No commands found");
+            }
+        } else {
+            ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
     }
 
     @CliCommand(command = COMMAND_EXIT)
     public void exit(String[] args) {
         ANSIHelpers.printGreenAndBold("Exiting...");
-        System.exit(0);
+        CliOutput.flush();
+        exitAction.run();
+    }
+
+    @CliCommand(command = COMMAND_HISTORY)
+    public void history(String[] args) {
+        CommandHistory history = CommandHistory.INSTANCE.getInstance();
+
+        if (args.length == 1) {
+            history.getEntries().forEach(entry ->
+                    CliOutput.println(String.format(Locale.ROOT, "%5d  %s", entry.number(), entry.command())));
+        } else if (args.length == 2 && args[1].equals(ACTION_CLEAR)) {
+            history.clear();
+            ANSIHelpers.printGreenAndBold("History cleared");
+        } else {
+            ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
     }
 }
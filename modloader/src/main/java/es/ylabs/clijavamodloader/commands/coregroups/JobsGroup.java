@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.commands.coregroups;
+
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.commands.management.JobManager;
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+import es.ylabs.clijavamodloader.output.CliOutput;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+@CliCommandGroup
+public class JobsGroup {
+
+    private final String COMMAND_JOBS = "jobs";
+    private final String COMMAND_WAIT = "wait";
+    private final String COMMAND_KILL = "kill";
+
+    private final JobManager jobManager;
+
+    public JobsGroup() {
+        jobManager = JobManager.INSTANCE.getInstance();
+    }
+
+    @CliCommand(command = COMMAND_JOBS)
+    public void jobs(String[] args) {
+        if (args.length == 1) {
+            List<JobManager.JobInfo> jobs = jobManager.getJobs();
+
+            if (jobs.isEmpty()) {
+                ANSIHelpers.printRedAndBold("No jobs");
+            } else {
+                jobs.forEach(this::printJob);
+                jobManager.removeFinishedJobs();
+            }
+        } else {
+            ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
+    }
+
+    @CliCommand(command = COMMAND_WAIT)
+    public void waitJob(String[] args) {
+        if (args.length == 1) {
+            try {
+                long failed = jobManager.waitForAll();
+                ANSIHelpers.printGreenAndBold("All jobs finished, " + failed + " failed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ANSIHelpers.printRedAndBold("Wait interrupted");
+                CliOutput.reportFailure();
+            }
+        } else if (args.length == 2) {
+            try {
+                printJob(jobManager.waitFor(Integer.parseInt(args[1])));
+            } catch (NumberFormatException e) {
+                ANSIHelpers.printRedAndBold("Invalid job id");
+                CliOutput.reportFailure();
+            } catch (Exception e) {
+                ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                        "UNKNOWN ERROR"));
+                CliOutput.reportFailure();
+            }
+        } else {
+            ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
+    }
+
+    @CliCommand(command = COMMAND_KILL)
+    public void kill(String[] args) {
+        if (args.length == 2) {
+            try {
+                jobManager.kill(Integer.parseInt(args[1]));
+                ANSIHelpers.printYellowAndBold("Job " + args[1] + " interrupted");
+            } catch (NumberFormatException e) {
+                ANSIHelpers.printRedAndBold("Invalid job id");
+                CliOutput.reportFailure();
+            } catch (Exception e) {
+                ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                        "UNKNOWN ERROR"));
+                CliOutput.reportFailure();
+            }
+        } else {
+            ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
+    }
+
+    private void printJob(JobManager.JobInfo job) {
+        String line = String.format(Locale.ROOT, "[%d] %-8s %10.3f s  %s", job.id(), job.state(),
+                job.elapsedNanos() / 1_000_000_000.0, job.command());
+
+        switch (job.state()) {
+            case RUNNING, DONE -> ANSIHelpers.printGreenAndBold(line);
+            case KILLED -> ANSIHelpers.printYellowAndBold(line);
+            case FAILED -> ANSIHelpers.printRedAndBold(line);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.commands.coregroups;
+
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.commands.management.CommandCollection;
+import es.ylabs.clijavamodloader.commands.management.CommandStats;
+import es.ylabs.clijavamodloader.commands.management.LatencyHistogram;
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+import es.ylabs.clijavamodloader.helpers.StartupTimer;
+import es.ylabs.clijavamodloader.modloader.LoaderCore;
+import es.ylabs.clijavamodloader.output.CliOutput;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+@CliCommandGroup
+public class StatsGroup {
+
+    private final String COMMAND_STATS = "stats";
+
+    private final String ACTION_RESET = "reset";
+    private final String ACTION_JFR = "jfr";
+    private final String ACTION_STARTUP = "startup";
+    private final String ACTION_BULKHEADS = "bulkheads";
+    private final String VALUE_ON = "on";
+    private final String VALUE_OFF = "off";
+    private final String CORE_MODULE = "core";
+
+    private final CommandCollection commandCollection;
+    private final LoaderCore loaderCore;
+
+    public StatsGroup() {
+        commandCollection = CommandCollection.INSTANCE.getInstance();
+        loaderCore = LoaderCore.INSTANCE.getInstance();
+    }
+
+    @CliCommand(command = COMMAND_STATS)
+    public void stats(String[] args) {
+        if (args.length == 1) {
+            printStats();
+        } else if (args.length == 2 && args[1].equals(ACTION_RESET)) {
+            commandCollection.resetCommandStats();
+            ANSIHelpers.printYellowAndBold("Command statistics reset");
+        } else if (args.length == 2 && args[1].equals(ACTION_STARTUP)) {
+            StartupTimer.INSTANCE.getInstance().printReport();
+        } else if (args.length == 2 && args[1].equals(ACTION_BULKHEADS)) {
+            printBulkheadStats();
+        } else if (args.length == 3 && args[1].equals(ACTION_JFR)
+                && (args[2].equals(VALUE_ON) || args[2].equals(VALUE_OFF))) {
+            commandCollection.setJfrEventsEnabled(args[2].equals(VALUE_ON));
+            ANSIHelpers.printYellowAndBold("JFR events " + (args[2].equals(VALUE_ON)
+                    ? "enabled"
+                    : "disabled"));
+        } else {
+            ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
+    }
+
+    private void printStats() {
+        Map<String, CommandStats> commandStats = commandCollection.getCommandStats();
+        Map<String, String> commandModules = new HashMap<>();
+        Map<String, TreeSet<String>> moduleCommands = new TreeMap<>();
+
+        loaderCore.getLoadedModulesWithCommands().forEach((module, commands) ->
+                commands.forEach(command -> commandModules.put(command, module)));
+
+        commandStats.keySet().forEach(command -> moduleCommands
+                .computeIfAbsent(commandModules.getOrDefault(command, CORE_MODULE),
+                        module -> new TreeSet<>())
+                .add(command));
+
+        // Core commands go first, then the modules in alphabetical order.
+        List<String> modules = moduleCommands.keySet().stream()
+                .sorted((first, second) -> first.equals(CORE_MODULE) ? -1
+                        : second.equals(CORE_MODULE) ? 1
+                        : first.compareTo(second))
+                .toList();
+
+        for (String module : modules) {
+            ANSIHelpers.printYellowAndBold(module);
+
+            for (String command : moduleCommands.get(module)) {
+                CommandStats stats = commandStats.get(command);
+                LatencyHistogram latencies = stats.getLatencies();
+
+                ANSIHelpers.printGreenAndBold(String.format(Locale.ROOT,
+                        "  %-20s calls %10d  errors %8d  p50 %10s  p99 %10s  max %10s",
+                        command, stats.getInvocations(), stats.getErrors(),
+                        formatNanos(latencies.getValueAtPercentile(50)),
+                        formatNanos(latencies.getValueAtPercentile(99)),
+                        formatNanos(latencies.getMax())));
+            }
+        }
+    }
+
+    private void printBulkheadStats() {
+        List<LoaderCore.BulkheadStats> bulkheads = loaderCore.getBulkheadStats();
+
+        if (bulkheads.isEmpty()) {
+            ANSIHelpers.printRedAndBold("No modules loaded");
+        }
+
+        for (LoaderCore.BulkheadStats bulkhead : bulkheads) {
+            LatencyHistogram waitTimes = bulkhead.waitTimes();
+
+            ANSIHelpers.printYellowAndBold(String.format(Locale.ROOT,
+                    "%s (%d concurrent, %d queued, timeout %s)",
+                    bulkhead.module(), bulkhead.maxConcurrent(), bulkhead.maxQueued(),
+                    bulkhead.timeoutMillis() > 0 ? bulkhead.timeoutMillis() + " ms" : "none"));
+            ANSIHelpers.printGreenAndBold(String.format(Locale.ROOT,
+                    "  active %6d  queued %6d  completed %10d  rejected %8d  timed out %8d  cancelled %8d",
+                    bulkhead.active(), bulkhead.queued(), bulkhead.completed(), bulkhead.rejected(),
+                    bulkhead.timedOut(), bulkhead.cancelled()));
+            ANSIHelpers.printGreenAndBold(String.format(Locale.ROOT,
+                    "  wait p50 %10s  p99 %10s  max %10s",
+                    formatNanos(waitTimes.getValueAtPercentile(50)),
+                    formatNanos(waitTimes.getValueAtPercentile(99)),
+                    formatNanos(waitTimes.getMax())));
+        }
+    }
+
+    private String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        } else if (nanos < 1_000_000) {
+            return String.format(Locale.ROOT, "%.1f us", nanos / 1_000.0);
+        } else if (nanos < 1_000_000_000) {
+            return String.format(Locale.ROOT, "%.1f ms", nanos / 1_000_000.0);
+        } else {
+            return String.format(Locale.ROOT, "%.2f s", nanos / 1_000_000_000.0);
+        }
+    }
+}
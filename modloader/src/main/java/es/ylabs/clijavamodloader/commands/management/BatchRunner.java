@@ -0,0 +1,145 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.commands.management;
+
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Runs commands read from a script or a pipe, without prompting.
+ * <p>
+ * Blank lines and lines starting with {@code #} are skipped. Depending on the
+ * error policy, a failing command either stops the run or is reported and
+ * skipped. Background jobs are waited for before finishing, and a summary
+ * with the run time and command throughput is printed at the end.
+ */
+public class BatchRunner {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CommandCollection commandCollection;
+    private final boolean failFast;
+
+    public BatchRunner(CommandCollection commandCollection, boolean failFast) {
+        this.commandCollection = commandCollection;
+        this.failFast = failFast;
+    }
+
+    /**
+     * Runs every command read from a script file or from the standard input.
+     *
+     * @param scriptFile The script file, or null to read the standard input.
+     *
+     * @return The number of failed commands.
+     * @throws IOException If the commands can't be read.
+     */
+    public long run(String scriptFile) throws IOException {
+        InputStream inputStream = scriptFile != null
+                ? Files.newInputStream(Path.of(scriptFile))
+                : System.in;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(inputStream, Charset.defaultCharset()), BUFFER_SIZE)) {
+            return run(reader);
+        }
+    }
+
+    /**
+     * Runs every command read from a reader.
+     *
+     * @param reader The reader to read commands from.
+     *
+     * @return The number of failed commands.
+     * @throws IOException If the commands can't be read.
+     */
+    public long run(BufferedReader reader) throws IOException {
+        long executed = 0;
+        long failed = 0;
+        long lineNumber = 0;
+        long start = System.nanoTime();
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if (line.isBlank() || line.stripLeading().startsWith("#")) {
+                continue;
+            }
+
+            executed++;
+
+            boolean succeeded = false;
+
+            try {
+                // A command reporting its own failure has already printed it.
+                succeeded = commandCollection.executeCommand(line);
+            } catch (Exception e) {
+                ANSIHelpers.printRedAndBold("Line " + lineNumber + ": "
+                        + Objects.requireNonNullElse(e.getMessage(), "UNKNOWN ERROR"));
+            }
+
+            if (!succeeded) {
+                failed++;
+
+                if (failFast) {
+                    break;
+                }
+            }
+        }
+
+        try {
+            failed += JobManager.INSTANCE.getInstance().waitForAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        printSummary(executed, failed, System.nanoTime() - start);
+
+        return failed;
+    }
+
+    private void printSummary(long executed, long failed, long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+        String summary = String.format(Locale.ROOT,
+                "%d commands executed, %d failed in %.3f s (%.1f commands/s)",
+                executed, failed, elapsedSeconds,
+                elapsedSeconds > 0 ? executed / elapsedSeconds : 0.0);
+
+        if (failed == 0) {
+            ANSIHelpers.printGreenAndBold(summary);
+        } else {
+            ANSIHelpers.printYellowAndBold(summary);
+        }
+    }
+}
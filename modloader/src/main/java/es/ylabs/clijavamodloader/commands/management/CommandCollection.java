@@ -24,18 +24,52 @@
 
 package es.ylabs.clijavamodloader.commands.management;
 
-import java.util.ArrayList;
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+import es.ylabs.clijavamodloader.helpers.CommandLineTokenizer;
+import es.ylabs.clijavamodloader.helpers.OutputControl;
+import es.ylabs.clijavamodloader.output.CliOutput;
+import es.ylabs.clijavamodloader.streams.PipeClosedException;
+import es.ylabs.clijavamodloader.streams.RecordSink;
+
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+/**
+ * Registry of the available commands.
+ * <p>
+ * The commands are kept in an immutable map that is replaced as a whole every
+ * time commands are added or removed. Lookups just read the current map, so
+ * they never block and never see a partially registered set of commands. A
+ * {@link CommandTrie} of the command names is kept in the same snapshot, for
+ * completion and for suggestions when a command isn't found.
+ * <p>
+ * Every command has its own {@link CommandStats}, updated on each execution
+ * without locking. Executions can also be reported as JFR events.
+ */
 public enum CommandCollection {
     INSTANCE;
 
-    private final Map<String, Consumer<String[]>> commands;
+    private static final String BACKGROUND_SUFFIX = "&";
+    private static final int MAX_COMPLETIONS = 1000;
+    private static final int MAX_SUGGESTIONS = 3;
+    private static final int SHORT_COMMAND_LENGTH = 4;
+
+    private static final ThreadLocal<CommandLineTokenizer> TOKENIZER =
+            ThreadLocal.withInitial(CommandLineTokenizer::new);
+
+    private final AtomicReference<Registry> registry;
+    private volatile boolean jfrEventsEnabled;
 
     CommandCollection() {
-        commands = new HashMap<>();
+        registry = new AtomicReference<>(new Registry(Map.of(), CommandTrie.empty()));
+        jfrEventsEnabled = false;
     }
 
     public CommandCollection getInstance() {
@@ -43,7 +77,8 @@ public enum CommandCollection {
     }
 
     /**
-     * Add new commands to the collection.
+     * Add new commands to the collection. Either all the commands are added or
+     * none of them is.
      *
      * @param newCommands A map containing the new commands to add.
      *
@@ -51,39 +86,461 @@ public enum CommandCollection {
      *                  and an exception will be thrown.
      */
     public void addCommands(Map<String, Consumer<String[]>> newCommands) throws Exception {
-        Map<String, Consumer<String[]>> result = new HashMap<>(newCommands);
-        result.keySet().retainAll(commands.keySet());
+        Registry current;
+        Registry updated;
 
-        if (!result.isEmpty()) {
-            throw new Exception("Duplicate commands found");
-        } else {
-            commands.putAll(newCommands);
-        }
+        do {
+            current = registry.get();
+
+            for (String command : newCommands.keySet()) {
+                if (current.commands().containsKey(command)) {
+                    throw new Exception("Duplicate commands found");
+                }
+            }
+
+            Map<String, RegisteredCommand> updatedCommands = new HashMap<>(current.commands());
+            CommandTrie updatedNames = current.names();
+
+            for (Map.Entry<String, Consumer<String[]>> newCommand : newCommands.entrySet()) {
+                updatedCommands.put(newCommand.getKey(),
+                        new RegisteredCommand(newCommand.getValue(), new CommandStats()));
+                updatedNames = updatedNames.with(newCommand.getKey());
+            }
+
+            updated = new Registry(Map.copyOf(updatedCommands), updatedNames);
+        } while (!registry.compareAndSet(current, updated));
+    }
+
+    /**
+     * Replace some commands of the collection with new ones, all at once. No
+     * command runs while only part of them has been replaced.
+     *
+     * @param oldCommands The commands to remove.
+     * @param newCommands A map containing the new commands to add.
+     *
+     * @throws Exception If any new command duplicates a command that isn't
+     *                  being replaced, nothing will change and an exception
+     *                  will be thrown.
+     */
+    public void replaceCommands(Collection<String> oldCommands,
+                                Map<String, Consumer<String[]>> newCommands) throws Exception {
+        Registry current;
+        Registry updated;
+
+        do {
+            current = registry.get();
+
+            Map<String, RegisteredCommand> updatedCommands = new HashMap<>(current.commands());
+            CommandTrie updatedNames = current.names();
+
+            updatedCommands.keySet().removeAll(oldCommands);
+
+            for (String oldCommand : oldCommands) {
+                updatedNames = updatedNames.without(oldCommand);
+            }
+
+            for (Map.Entry<String, Consumer<String[]>> newCommand : newCommands.entrySet()) {
+                if (updatedCommands.containsKey(newCommand.getKey())) {
+                    throw new Exception("Duplicate commands found");
+                }
+
+                // Commands kept across the replacement keep their statistics.
+                RegisteredCommand oldCommand = current.commands().get(newCommand.getKey());
+                updatedCommands.put(newCommand.getKey(), new RegisteredCommand(newCommand.getValue(),
+                        oldCommand != null ? oldCommand.stats() : new CommandStats()));
+                updatedNames = updatedNames.with(newCommand.getKey());
+            }
+
+            updated = new Registry(Map.copyOf(updatedCommands), updatedNames);
+        } while (!registry.compareAndSet(current, updated));
     }
 
     /**
-     * Execute a command.
+     * Execute a command. If the command ends with {@code &}, it's started as a
+     * background job instead. Commands separated by {@code |} are run as a
+     * pipeline. With structured output, a {@code result} record with the
+     * status and the duration of the command is written after it, or a
+     * {@code job} record with the id of the job it was started as.
      *
      * @param command A string containing the command to execute and its arguments.
      *
-     * @throws Exception If the command is not found, an exception will be thrown.
+     * @return True if the command succeeded, false if it reported a failure
+     *      through {@link CliOutput#reportFailure()}, after printing its own
+     *      error.
+     * @throws Exception If the command is not found or fails, an exception will
+     *                  be thrown.
      */
-    public void executeCommand(String command) throws Exception {
-        String[] commandArray = command.split(" ");
+    public boolean executeCommand(String command) throws Exception {
+        String backgroundCommand = getBackgroundCommand(command);
+
+        if (backgroundCommand != null) {
+            int jobId = JobManager.INSTANCE.getInstance().submit(backgroundCommand);
+
+            if (CliOutput.isStructured()) {
+                CliOutput.beginRecord("job")
+                        .field("id", jobId)
+                        .field("command", backgroundCommand)
+                        .field("state", "running")
+                        .end();
+            } else {
+                ANSIHelpers.printYellowAndBold("[" + jobId + "] " + backgroundCommand);
+            }
+
+            return true;
+        }
 
-        if (commands.containsKey(commandArray[0])) {
-            commands.get(commandArray[0]).accept(commandArray);
-        } else {
+        if (!CliOutput.isStructured()) {
+            return executeForeground(command);
+        }
+
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        String error = null;
+
+        try {
+            succeeded = executeForeground(command);
+            return succeeded;
+        } catch (SessionExitException e) {
+            succeeded = true;
+            throw e;
+        } catch (Throwable t) {
+            error = Objects.requireNonNullElse(t.getMessage(), t.getClass().getName());
+            throw t;
+        } finally {
+            // A command reporting its own failure has already printed why.
+            CliOutput.beginRecord("result")
+                    .field("command", command.strip())
+                    .field("status", succeeded ? "ok" : "error")
+                    .field("error", error)
+                    .field("durationMicros", (System.nanoTime() - start) / 1000)
+                    .end();
+        }
+    }
+
+    private boolean executeForeground(String command) throws Exception {
+        CommandLineTokenizer tokenizer = TOKENIZER.get();
+
+        if (tokenizer.tokenize(command) == 0) {
             throw new Exception("Command not found");
         }
+
+        String[][] stages = new String[tokenizer.getStageCount()][];
+
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = tokenizer.toArray(i);
+        }
+
+        tokenizer.clear();
+
+        RegisteredCommand[] registeredCommands = resolve(stages);
+
+        return stages.length == 1
+                ? execute(registeredCommands[0], stages[0], null, null)
+                : executePipeline(registeredCommands, stages);
+    }
+
+    /**
+     * Looks up the command of every stage. The registry snapshot is only
+     * referenced here, not by the frame running the commands: a command that
+     * unloads a module, such as {@code rmmod -v}, would otherwise keep the
+     * module reachable until it returns.
+     */
+    private RegisteredCommand[] resolve(String[][] stages) throws Exception {
+        RegisteredCommand[] registeredCommands = new RegisteredCommand[stages.length];
+        Map<String, RegisteredCommand> currentCommands = registry.get().commands();
+
+        for (int i = 0; i < stages.length; i++) {
+            if (stages[i].length == 0) {
+                throw new Exception("Empty command in pipeline");
+            }
+
+            registeredCommands[i] = currentCommands.get(stages[i][0]);
+
+            if (registeredCommands[i] == null) {
+                throw new Exception(getCommandNotFoundMessage(stages[i][0]));
+            }
+        }
+
+        return registeredCommands;
+    }
+
+    /**
+     * Runs every stage of a pipeline concurrently. All but the last one run on
+     * their own virtual threads, linked by {@link RecordPipe}s; the last one
+     * runs on the calling thread, so its output goes wherever the output of a
+     * single command would. The other stages write their own output, such as
+     * errors, where the calling thread does, tagged with its job if it has one.
+     *
+     * @return True if every stage succeeded, false if any of them reported a
+     *      failure.
+     */
+    private boolean executePipeline(RegisteredCommand[] registeredCommands, String[][] stages) throws Exception {
+        int last = stages.length - 1;
+        RecordPipe[] pipes = new RecordPipe[last];
+        Thread[] threads = new Thread[last];
+        Exception[] failures = new Exception[stages.length];
+        boolean[] succeeded = new boolean[stages.length];
+
+        for (int i = 0; i < last; i++) {
+            pipes[i] = new RecordPipe();
+        }
+
+        for (int i = 0; i < last; i++) {
+            int stage = i;
+
+            Runnable stageTask = () -> {
+                try {
+                    succeeded[stage] = execute(registeredCommands[stage], stages[stage],
+                            stage == 0 ? Collections.emptyIterator() : pipes[stage - 1].reader(),
+                            pipes[stage]);
+                } catch (Exception e) {
+                    failures[stage] = e;
+                } finally {
+                    if (stage > 0) {
+                        pipes[stage - 1].close();
+                    }
+
+                    pipes[stage].finish();
+                }
+            };
+
+            threads[i] = Thread.ofVirtual().name("pipeline-stage-" + stage)
+                    .start(JobManager.INSTANCE.getInstance().inheritJob(
+                            OutputControl.get().inheritOutput(stageTask)));
+        }
+
+        try {
+            succeeded[last] = execute(registeredCommands[last], stages[last], pipes[last - 1].reader(),
+                    PipelineStages.CONSOLE);
+        } catch (Exception e) {
+            failures[last] = e;
+        } finally {
+            pipes[last - 1].close();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (int i = 0; i < last; i++) {
+                pipes[i].close();
+                threads[i].interrupt();
+            }
+
+            Thread.currentThread().interrupt();
+            throw new Exception("Interrupted while waiting for the pipeline", e);
+        }
+
+        for (Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        for (boolean stageSucceeded : succeeded) {
+            if (!stageSucceeded) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Runs a single command, recording its statistics.
+     *
+     * @param registeredCommand The command.
+     * @param commandArray The command and its arguments.
+     * @param input The records written by the previous stage of the pipeline,
+     *              or null if the command isn't piped.
+     * @param output Where the records of the command are written, or null if
+     *               the command isn't piped.
+     *
+     * @return True if the command succeeded, false if it reported a failure.
+     */
+    private boolean execute(RegisteredCommand registeredCommand, String[] commandArray,
+                            Iterator<String> input, RecordSink output) throws Exception {
+        CommandExecutionEvent event = jfrEventsEnabled ? new CommandExecutionEvent() : null;
+        boolean failed = true;
+        long start = System.nanoTime();
+        // A command run by another one mustn't take the failure of its caller.
+        boolean callerFailureReported = OutputControl.get().resetFailure();
+
+        if (event != null) {
+            event.begin();
+        }
+
+        // The output of the command is written at once when it finishes.
+        OutputControl.get().beginBatch();
+
+        try {
+            if (input == null) {
+                registeredCommand.consumer().accept(commandArray);
+            } else {
+                PipelineStages.run(registeredCommand.consumer(), commandArray, input, output);
+            }
+
+            failed = false;
+        } catch (PipeClosedException e) {
+            // The rest of the pipeline didn't need more records.
+            failed = false;
+        } catch (SessionExitException e) {
+            failed = false;
+            throw e;
+        } catch (Exception e) {
+            throw new Exception("Error executing command " + commandArray[0] + ": "
+                    + Objects.requireNonNullElse(e.getMessage(), e.getClass().getName()), e);
+        } finally {
+            OutputControl.get().endBatch();
+            failed |= OutputControl.get().resetFailure();
+            registeredCommand.stats().record(System.nanoTime() - start, failed);
+
+            if (callerFailureReported) {
+                CliOutput.reportFailure();
+            }
+
+            if (event != null) {
+                event.end();
+
+                if (event.shouldCommit()) {
+                    event.command = commandArray[0];
+                    event.failed = failed;
+                    event.commit();
+                }
+            }
+        }
+
+        return !failed;
+    }
+
+    /**
+     * Remove commands from the collection. All the commands are removed at once.
+     *
+     * @param commandsToRemove The commands to remove.
+     */
+    public void removeCommands(Collection<String> commandsToRemove) {
+        Registry current;
+        Registry updated;
+
+        do {
+            current = registry.get();
+
+            Map<String, RegisteredCommand> updatedCommands = new HashMap<>(current.commands());
+            CommandTrie updatedNames = current.names();
+
+            updatedCommands.keySet().removeAll(commandsToRemove);
+
+            for (String command : commandsToRemove) {
+                updatedNames = updatedNames.without(command);
+            }
+
+            updated = new Registry(Map.copyOf(updatedCommands), updatedNames);
+        } while (!registry.compareAndSet(current, updated));
+    }
+
+    /**
+     * Returns the statistics of the registered commands.
+     *
+     * @return A map from command names to their statistics.
+     */
+    public Map<String, CommandStats> getCommandStats() {
+        Map<String, CommandStats> toret = new HashMap<>();
+
+        registry.get().commands().forEach((command, registeredCommand) ->
+                toret.put(command, registeredCommand.stats()));
+
+        return toret;
+    }
+
+    /**
+     * Forgets the statistics of every registered command.
+     */
+    public void resetCommandStats() {
+        registry.get().commands().values().forEach(registeredCommand -> registeredCommand.stats().reset());
+    }
+
+    public boolean isJfrEventsEnabled() {
+        return jfrEventsEnabled;
+    }
+
+    /**
+     * Enables or disables the JFR events emitted for every executed command.
+     *
+     * @param enabled Whether JFR events are emitted.
+     */
+    public void setJfrEventsEnabled(boolean enabled) {
+        jfrEventsEnabled = enabled;
+    }
+
+    /**
+     * Completes a command name.
+     *
+     * @param prefix The beginning of the name.
+     *
+     * @return The names of the registered commands starting with the prefix,
+     *      in alphabetical order.
+     */
+    public List<String> completeCommand(String prefix) {
+        return registry.get().names().complete(prefix, MAX_COMPLETIONS);
+    }
+
+    /**
+     * Finds the registered commands with names close to an unknown one, such
+     * as a misspelling. Short names only allow one edit, so suggestions stay
+     * relevant.
+     *
+     * @param command The unknown command.
+     *
+     * @return The closest command names, nearest first.
+     */
+    public List<String> suggestCommands(String command) {
+        int maxDistance = command.length() <= SHORT_COMMAND_LENGTH ? 1 : 2;
+
+        return registry.get().names().suggest(command, maxDistance, MAX_SUGGESTIONS).stream()
+                .map(CommandTrie.Suggestion::name)
+                .toList();
     }
 
     /**
-     * Remove commands from the collection.
+     * Tells whether a command would be started as a background job.
+     *
+     * @param command A string containing a command and its arguments.
      *
-     * @param commandsToRemove A list of commands to remove.
+     * @return True if the command ends with an unescaped {@code &}.
+     */
+    public boolean isBackgroundCommand(String command) {
+        return getBackgroundCommand(command) != null;
+    }
+
+    private static String getBackgroundCommand(String command) {
+        String stripped = command.stripTrailing();
+
+        if (!stripped.endsWith(BACKGROUND_SUFFIX)
+                || (stripped.length() > 1 && stripped.charAt(stripped.length() - 2) == '\\')) {
+            return null;
+        }
+
+        String backgroundCommand = stripped.substring(0, stripped.length() - 1).strip();
+
+        return backgroundCommand.isEmpty() ? null : backgroundCommand;
+    }
+
+    private String getCommandNotFoundMessage(String command) {
+        List<String> suggestions = suggestCommands(command);
+
+        return suggestions.isEmpty()
+                ? "Command not found"
+                : "Command not found, did you mean " + String.join(", ", suggestions) + "?";
+    }
+
+    private record RegisteredCommand(Consumer<String[]> consumer, CommandStats stats) {
+    }
+
+    /**
+     * A snapshot of the registered commands and the trie of their names,
+     * always replaced together.
      */
-    public void removeCommands(ArrayList<String> commandsToRemove) {
-        commandsToRemove.forEach(commands::remove);
+    private record Registry(Map<String, RegisteredCommand> commands, CommandTrie names) {
     }
 }
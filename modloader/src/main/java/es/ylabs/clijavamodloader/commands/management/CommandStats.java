@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.commands.management;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invocation and error counters and latency histogram of a command.
+ */
+public final class CommandStats {
+
+    private final LongAdder invocations;
+    private final LongAdder errors;
+    private final LatencyHistogram latencies;
+
+    public CommandStats() {
+        invocations = new LongAdder();
+        errors = new LongAdder();
+        latencies = new LatencyHistogram();
+    }
+
+    /**
+     * Records an invocation of the command.
+     *
+     * @param elapsedNanos The time the invocation took, in nanoseconds.
+     * @param failed Whether the invocation failed.
+     */
+    public void record(long elapsedNanos, boolean failed) {
+        invocations.increment();
+
+        if (failed) {
+            errors.increment();
+        }
+
+        latencies.record(elapsedNanos);
+    }
+
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Returns the latency histogram of the command, in nanoseconds.
+     *
+     * @return The latency histogram.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Forgets every recorded invocation.
+     */
+    public void reset() {
+        invocations.reset();
+        errors.reset();
+        latencies.reset();
+    }
+}
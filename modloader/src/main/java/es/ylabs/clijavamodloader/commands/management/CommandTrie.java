@@ -0,0 +1,315 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.commands.management;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable prefix trie of command names.
+ * <p>
+ * Adding or removing a name copies only the nodes on its path and shares the
+ * rest, so a new trie can be built for every snapshot of the command registry
+ * without copying all the names. Every node keeps its children in two sorted
+ * arrays instead of a map, which keeps it small and makes walking the
+ * children in order cheap.
+ * <p>
+ * Besides completing prefixes, the trie finds the names within a small edit
+ * distance of a given one. The distance is computed one row per trie level, so
+ * a prefix shared by many names is only processed once, and a whole branch is
+ * skipped as soon as every entry of its row exceeds the maximum distance.
+ */
+public final class CommandTrie {
+
+    private static final CommandTrie EMPTY = new CommandTrie(Node.EMPTY, 0);
+
+    /**
+     * A name found by {@link #suggest(String, int, int)}.
+     *
+     * @param name The name.
+     * @param distance Its edit distance to the searched name.
+     */
+    public record Suggestion(String name, int distance) {
+    }
+
+    private final Node root;
+    private final int size;
+
+    private CommandTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static CommandTrie empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(String name) {
+        Node node = find(name);
+
+        return node != null && node.terminal;
+    }
+
+    /**
+     * Returns a trie that also contains a name.
+     *
+     * @param name The name to add.
+     *
+     * @return The new trie, or this one if it already contains the name.
+     */
+    public CommandTrie with(String name) {
+        if (contains(name)) {
+            return this;
+        }
+
+        return new CommandTrie(insert(root, name, 0), size + 1);
+    }
+
+    /**
+     * Returns a trie without a name.
+     *
+     * @param name The name to remove.
+     *
+     * @return The new trie, or this one if it doesn't contain the name.
+     */
+    public CommandTrie without(String name) {
+        if (!contains(name)) {
+            return this;
+        }
+
+        Node newRoot = remove(root, name, 0);
+
+        return new CommandTrie(newRoot != null ? newRoot : Node.EMPTY, size - 1);
+    }
+
+    /**
+     * Finds the names starting with a prefix.
+     *
+     * @param prefix The prefix.
+     * @param limit The maximum number of names to return.
+     *
+     * @return The names, in alphabetical order.
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<String> names = new ArrayList<>();
+        Node node = find(prefix);
+
+        if (node != null && limit > 0) {
+            collect(node, new StringBuilder(prefix), names, limit);
+        }
+
+        return names;
+    }
+
+    /**
+     * Finds the names within an edit distance of a given one, counting
+     * insertions, deletions and substitutions of a character, and swaps of two
+     * adjacent characters.
+     *
+     * @param name The name to search for.
+     * @param maxDistance The maximum edit distance.
+     * @param limit The maximum number of names to return.
+     *
+     * @return The closest names, nearest first and then in alphabetical order.
+     */
+    public List<Suggestion> suggest(String name, int maxDistance, int limit) {
+        List<Suggestion> suggestions = new ArrayList<>();
+        int[] firstRow = new int[name.length() + 1];
+
+        for (int i = 0; i < firstRow.length; i++) {
+            firstRow[i] = i;
+        }
+
+        StringBuilder path = new StringBuilder();
+        // Rows are reused for every node at the same depth.
+        List<int[]> rows = new ArrayList<>();
+
+        for (int i = 0; i < root.keys.length; i++) {
+            search(root.children[i], root.keys[i], (char) 0, name, firstRow, null, rows, path, maxDistance,
+                    suggestions);
+        }
+
+        suggestions.sort(Comparator.comparingInt(Suggestion::distance).thenComparing(Suggestion::name));
+
+        return suggestions.size() > limit ? List.copyOf(suggestions.subList(0, limit)) : suggestions;
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+
+        return node;
+    }
+
+    private static void collect(Node node, StringBuilder path, List<String> names, int limit) {
+        if (node.terminal) {
+            names.add(path.toString());
+        }
+
+        for (int i = 0; i < node.keys.length && names.size() < limit; i++) {
+            path.append(node.keys[i]);
+            collect(node.children[i], path, names, limit);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    private static void search(Node node, char key, char previousKey, String name, int[] previousRow,
+                               int[] rowBeforePrevious, List<int[]> rows, StringBuilder path,
+                               int maxDistance, List<Suggestion> suggestions) {
+        int columns = name.length() + 1;
+
+        if (rows.size() == path.length()) {
+            rows.add(new int[columns]);
+        }
+
+        int[] row = rows.get(path.length());
+        int rowMin = row[0] = previousRow[0] + 1;
+
+        for (int i = 1; i < columns; i++) {
+            int insertion = row[i - 1] + 1;
+            int deletion = previousRow[i] + 1;
+            int substitution = previousRow[i - 1] + (name.charAt(i - 1) == key ? 0 : 1);
+
+            row[i] = Math.min(Math.min(insertion, deletion), substitution);
+
+            if (rowBeforePrevious != null && i > 1 && key == name.charAt(i - 2)
+                    && previousKey == name.charAt(i - 1)) {
+                row[i] = Math.min(row[i], rowBeforePrevious[i - 2] + 1);
+            }
+
+            rowMin = Math.min(rowMin, row[i]);
+        }
+
+        path.append(key);
+
+        if (node.terminal && row[columns - 1] <= maxDistance) {
+            suggestions.add(new Suggestion(path.toString(), row[columns - 1]));
+        }
+
+        // No name below can get closer than the closest entry of the row.
+        if (rowMin <= maxDistance) {
+            for (int i = 0; i < node.keys.length; i++) {
+                search(node.children[i], node.keys[i], key, name, row, previousRow, rows, path,
+                        maxDistance, suggestions);
+            }
+        }
+
+        path.setLength(path.length() - 1);
+    }
+
+    private static Node insert(Node node, String name, int position) {
+        if (position == name.length()) {
+            return new Node(node.keys, node.children, true);
+        }
+
+        char key = name.charAt(position);
+        Node child = node.child(key);
+
+        return node.withChild(key, insert(child != null ? child : Node.EMPTY, name, position + 1));
+    }
+
+    private static Node remove(Node node, String name, int position) {
+        Node updated;
+
+        if (position == name.length()) {
+            updated = new Node(node.keys, node.children, false);
+        } else {
+            char key = name.charAt(position);
+            Node child = remove(node.child(key), name, position + 1);
+
+            updated = child != null ? node.withChild(key, child) : node.withoutChild(key);
+        }
+
+        // Branches left without names are pruned.
+        return updated.terminal || updated.keys.length > 0 ? updated : null;
+    }
+
+    private static final class Node {
+
+        private static final Node EMPTY = new Node(new char[0], new Node[0], false);
+
+        private final char[] keys;
+        private final Node[] children;
+        private final boolean terminal;
+
+        private Node(char[] keys, Node[] children, boolean terminal) {
+            this.keys = keys;
+            this.children = children;
+            this.terminal = terminal;
+        }
+
+        private Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node withChild(char key, Node child) {
+            int index = Arrays.binarySearch(keys, key);
+
+            if (index >= 0) {
+                Node[] newChildren = children.clone();
+                newChildren[index] = child;
+
+                return new Node(keys, newChildren, terminal);
+            }
+
+            int insertion = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            newKeys[insertion] = key;
+            newChildren[insertion] = child;
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+
+            return new Node(newKeys, newChildren, terminal);
+        }
+
+        private Node withoutChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+
+            return new Node(newKeys, newChildren, terminal);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.commands.management;
+
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs commands as background jobs, each one on its own virtual thread.
+ * <p>
+ * The terminal output has to be written through {@link #getOutputStream()},
+ * so every line printed by a job is tagged with its id. Jobs are cancelled by
+ * interrupting their threads, so only commands that react to interrupts stop
+ * when killed.
+ */
+public enum JobManager {
+    INSTANCE;
+
+    public enum JobState {
+        RUNNING, DONE, FAILED, KILLED
+    }
+
+    /**
+     * A snapshot of a job.
+     *
+     * @param id The id of the job.
+     * @param command The command line the job runs.
+     * @param state The state of the job.
+     * @param elapsedNanos The time the job has been running, or took to finish.
+     */
+    public record JobInfo(int id, String command, JobState state, long elapsedNanos) {
+    }
+
+    private final AtomicInteger nextId;
+    private final Map<Integer, Job> jobs;
+    private final JobOutputStream jobOutputStream;
+
+    JobManager() {
+        nextId = new AtomicInteger(1);
+        jobs = new ConcurrentSkipListMap<>();
+        jobOutputStream = new JobOutputStream(new FileOutputStream(FileDescriptor.out));
+    }
+
+    public JobManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the stream the terminal output has to be written to, which tags
+     * the lines written by jobs.
+     *
+     * @return The output stream.
+     */
+    public OutputStream getOutputStream() {
+        return jobOutputStream;
+    }
+
+    /**
+     * Wraps a task so that its output is tagged as the one of the job the
+     * calling thread runs, if any.
+     *
+     * @param task The task.
+     *
+     * @return A task that runs the given one as part of the job of the calling thread.
+     */
+    Runnable inheritJob(Runnable task) {
+        return jobOutputStream.inheritJob(task);
+    }
+
+    /**
+     * Starts a command as a background job.
+     *
+     * @param command The command line to run.
+     *
+     * @return The id of the job.
+     */
+    public int submit(String command) {
+        Job job = new Job(nextId.getAndIncrement(), command);
+
+        jobs.put(job.id, job);
+        job.thread.start();
+
+        return job.id;
+    }
+
+    /**
+     * Returns a snapshot of the known jobs, ordered by id.
+     *
+     * @return The known jobs.
+     */
+    public List<JobInfo> getJobs() {
+        return jobs.values().stream().map(Job::toInfo).toList();
+    }
+
+    /**
+     * Forgets the jobs that have finished.
+     */
+    public void removeFinishedJobs() {
+        jobs.values().removeIf(job -> job.state != JobState.RUNNING);
+    }
+
+    /**
+     * Waits for a job to finish and forgets it.
+     *
+     * @param id The id of the job.
+     *
+     * @return The finished job.
+     * @throws Exception If the job doesn't exist, is the one of the calling
+     *      thread or the wait is interrupted.
+     */
+    public JobInfo waitFor(int id) throws Exception {
+        Job job = getJob(id);
+
+        if (id == jobOutputStream.getCurrentJobId()) {
+            throw new Exception("Job " + id + " can't wait for itself");
+        }
+
+        job.thread.join();
+        jobs.remove(id);
+
+        return job.toInfo();
+    }
+
+    /**
+     * Waits for every job to finish and forgets them. Called from a job, or
+     * from one of its pipeline stages, it skips that job, which would
+     * otherwise wait for itself forever.
+     *
+     * @return The number of jobs that failed.
+     * @throws InterruptedException If the wait is interrupted.
+     */
+    public long waitForAll() throws InterruptedException {
+        int callerJobId = jobOutputStream.getCurrentJobId();
+        long failed = 0;
+
+        for (Job job : jobs.values()) {
+            if (job.id == callerJobId) {
+                continue;
+            }
+
+            job.thread.join();
+
+            if (job.state == JobState.FAILED) {
+                failed++;
+            }
+
+            jobs.remove(job.id);
+        }
+
+        return failed;
+    }
+
+    /**
+     * Cancels a job by interrupting its thread.
+     *
+     * @param id The id of the job.
+     *
+     * @throws Exception If the job doesn't exist or has already finished.
+     */
+    public void kill(int id) throws Exception {
+        Job job = getJob(id);
+
+        if (job.state != JobState.RUNNING) {
+            throw new Exception("Job " + id + " has already finished");
+        }
+
+        job.killed = true;
+        job.thread.interrupt();
+    }
+
+    private Job getJob(int id) throws Exception {
+        Job job = jobs.get(id);
+
+        if (job == null) {
+            throw new Exception("Job " + id + " not found");
+        }
+
+        return job;
+    }
+
+    private void run(Job job) {
+        jobOutputStream.bind(job.id);
+
+        try {
+            boolean succeeded = CommandCollection.INSTANCE.getInstance().executeCommand(job.command);
+            job.finish(job.killed ? JobState.KILLED : succeeded ? JobState.DONE : JobState.FAILED);
+        } catch (Exception e) {
+            job.finish(job.killed ? JobState.KILLED : JobState.FAILED);
+            ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                    "UNKNOWN ERROR"));
+        } finally {
+            jobOutputStream.unbind();
+        }
+    }
+
+    private final class Job {
+
+        private final int id;
+        private final String command;
+        private final Thread thread;
+        private final long start;
+        private volatile long end;
+        private volatile JobState state;
+        private volatile boolean killed;
+
+        private Job(int id, String command) {
+            this.id = id;
+            this.command = command;
+            this.thread = Thread.ofVirtual().name("job-" + id).unstarted(() -> run(this));
+            this.start = System.nanoTime();
+            this.state = JobState.RUNNING;
+            this.killed = false;
+        }
+
+        private void finish(JobState finalState) {
+            end = System.nanoTime();
+            state = finalState;
+        }
+
+        private JobInfo toInfo() {
+            JobState currentState = state;
+
+            return new JobInfo(id, command, currentState, (currentState == JobState.RUNNING
+                    ? System.nanoTime()
+                    : end) - start);
+        }
+    }
+}
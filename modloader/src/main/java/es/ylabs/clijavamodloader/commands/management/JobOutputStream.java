@@ -0,0 +1,242 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.commands.management;
+
+import es.ylabs.clijavamodloader.output.CliOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output stream that tags the output of background jobs.
+ * <p>
+ * Output written from a job thread is prefixed with the job id on every line,
+ * or, if the output is structured, gets a {@code job} field in every JSON
+ * record, so it stays valid JSON Lines. All of its complete lines are written to the target stream at once, so
+ * lines of concurrent jobs never interleave. A trailing partial line is kept
+ * until it's completed. Output from any other thread goes straight to the
+ * target stream.
+ */
+final class JobOutputStream extends OutputStream {
+
+    private static final ThreadLocal<JobLineBuffer> CURRENT_JOB = new ThreadLocal<>();
+
+    private final OutputStream target;
+
+    JobOutputStream(OutputStream target) {
+        this.target = target;
+    }
+
+    /**
+     * Binds the current thread to a job, until {@link #unbind()} is called.
+     * Its lines are tagged as records if the output of the thread is
+     * structured.
+     *
+     * @param jobId The id of the job.
+     */
+    void bind(int jobId) {
+        boolean structured = CliOutput.isStructured();
+        String prefix = structured ? "{\"job\":" + jobId + "," : "[" + jobId + "] ";
+
+        CURRENT_JOB.set(new JobLineBuffer(jobId, prefix.getBytes(StandardCharsets.UTF_8), structured));
+    }
+
+    /**
+     * Returns the id of the job the current thread is bound to.
+     *
+     * @return The id of the job, or 0 if the thread isn't bound to any.
+     */
+    int getCurrentJobId() {
+        JobLineBuffer lineBuffer = CURRENT_JOB.get();
+
+        return lineBuffer != null ? lineBuffer.jobId : 0;
+    }
+
+    /**
+     * Unbinds the current thread from its job, writing any pending partial line.
+     */
+    void unbind() {
+        JobLineBuffer lineBuffer = CURRENT_JOB.get();
+
+        if (lineBuffer != null) {
+            if (lineBuffer.pending.size() > 0) {
+                lineBuffer.pending.write('\n');
+                lineBuffer.completeLength = lineBuffer.pending.size();
+                writeCompleteLines(lineBuffer);
+            }
+
+            CURRENT_JOB.remove();
+        }
+    }
+
+    /**
+     * Wraps a task so that, if the calling thread is bound to a job, the task
+     * is bound to the same job while it runs. Its lines are tagged and buffered
+     * on their own, so they never interleave with the ones of the calling thread.
+     *
+     * @param task The task.
+     *
+     * @return A task that runs the given one bound to the job of the calling thread.
+     */
+    Runnable inheritJob(Runnable task) {
+        JobLineBuffer lineBuffer = CURRENT_JOB.get();
+
+        if (lineBuffer == null) {
+            return task;
+        }
+
+        int jobId = lineBuffer.jobId;
+        byte[] prefix = lineBuffer.prefix;
+        boolean structured = lineBuffer.structured;
+
+        return () -> {
+            CURRENT_JOB.set(new JobLineBuffer(jobId, prefix, structured));
+
+            try {
+                task.run();
+            } finally {
+                unbind();
+            }
+        };
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{ (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        JobLineBuffer lineBuffer = CURRENT_JOB.get();
+
+        if (lineBuffer == null) {
+            synchronized (target) {
+                target.write(bytes, offset, length);
+            }
+
+            return;
+        }
+
+        int end = offset + length;
+        int segmentStart = offset;
+
+        while (segmentStart < end) {
+            if (lineBuffer.atLineStart) {
+                if (!lineBuffer.structured) {
+                    lineBuffer.pending.write(lineBuffer.prefix, 0, lineBuffer.prefix.length);
+                } else if (bytes[segmentStart] == '{') {
+                    // The prefix opens the record and its job field, so the
+                    // opening brace of the record is dropped.
+                    lineBuffer.pending.write(lineBuffer.prefix, 0, lineBuffer.prefix.length);
+                    segmentStart++;
+                }
+
+                lineBuffer.atLineStart = false;
+            }
+
+            int segmentEnd = segmentStart;
+
+            while (segmentEnd < end && bytes[segmentEnd] != '\n') {
+                segmentEnd++;
+            }
+
+            if (segmentEnd < end) {
+                segmentEnd++;
+                lineBuffer.atLineStart = true;
+            }
+
+            lineBuffer.pending.write(bytes, segmentStart, segmentEnd - segmentStart);
+
+            if (lineBuffer.atLineStart) {
+                lineBuffer.completeLength = lineBuffer.pending.size();
+            }
+
+            segmentStart = segmentEnd;
+        }
+
+        writeCompleteLines(lineBuffer);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    private void writeCompleteLines(JobLineBuffer lineBuffer) {
+        if (lineBuffer.completeLength == 0) {
+            return;
+        }
+
+        try {
+            synchronized (target) {
+                lineBuffer.pending.writeTo(target, lineBuffer.completeLength);
+                target.flush();
+            }
+        } catch (IOException ignored) {
+            // There is nowhere else to report it.
+        }
+
+        lineBuffer.pending.discard(lineBuffer.completeLength);
+        lineBuffer.completeLength = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        target.close();
+    }
+
+    private static final class JobLineBuffer {
+
+        private final int jobId;
+        private final byte[] prefix;
+        private final boolean structured;
+        private final LineBuffer pending;
+        private boolean atLineStart;
+        private int completeLength;
+
+        private JobLineBuffer(int jobId, byte[] prefix, boolean structured) {
+            this.jobId = jobId;
+            this.prefix = prefix;
+            this.structured = structured;
+            this.pending = new LineBuffer();
+            this.atLineStart = true;
+            this.completeLength = 0;
+        }
+    }
+
+    private static final class LineBuffer extends ByteArrayOutputStream {
+
+        private void writeTo(OutputStream out, int length) throws IOException {
+            out.write(buf, 0, length);
+        }
+
+        private void discard(int length) {
+            System.arraycopy(buf, length, buf, 0, count - length);
+            count -= length;
+        }
+    }
+}
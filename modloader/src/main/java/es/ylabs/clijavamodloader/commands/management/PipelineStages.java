@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.commands.management;
+
+import es.ylabs.clijavamodloader.helpers.OutputControl;
+import es.ylabs.clijavamodloader.output.CliOutput;
+import es.ylabs.clijavamodloader.streams.PipeClosedException;
+import es.ylabs.clijavamodloader.streams.RecordSink;
+import es.ylabs.clijavamodloader.streams.StreamingCommand;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Runs registered commands as stages of a pipeline.
+ * <p>
+ * Streaming commands get the records directly. Any other command gets no
+ * input, and what it prints is split into lines, each one written as a record,
+ * unless it's the last stage and prints as usual.
+ */
+public final class PipelineStages {
+
+    /**
+     * The output of the last stage of a pipeline, or of a streaming command
+     * that isn't piped: every record is printed as a line.
+     */
+    public static final RecordSink CONSOLE = CliOutput::println;
+
+    private PipelineStages() {
+    }
+
+    /**
+     * Runs a command as a stage of a pipeline.
+     *
+     * @param command The command, as registered.
+     * @param args The command and its arguments.
+     * @param input The records written by the previous stage.
+     * @param output Where the records of the stage are written.
+     */
+    public static void run(Consumer<String[]> command, String[] args, Iterator<String> input,
+                           RecordSink output) {
+        if (command instanceof StreamingCommand streamingCommand) {
+            streamingCommand.run(args, input, output);
+        } else if (output == CONSOLE) {
+            command.accept(args);
+        } else {
+            LineRecordStream lines = new LineRecordStream(output);
+            // Records are plain text, so they never carry ANSI styles.
+            OutputControl.get().redirect(lines, false);
+
+            try {
+                command.accept(args);
+            } finally {
+                try {
+                    OutputControl.get().resetRedirect();
+                    lines.finish();
+                } catch (PipeClosedException ignored) {
+                    // The next stage didn't need the rest of the output.
+                }
+            }
+        }
+    }
+
+    private static final class LineRecordStream extends OutputStream {
+
+        private final RecordSink output;
+        private final ByteArrayOutputStream line;
+
+        private LineRecordStream(RecordSink output) {
+            this.output = output;
+            this.line = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                emitLine();
+            } else {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            int start = offset;
+
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] == '\n') {
+                    line.write(bytes, start, i - start);
+                    emitLine();
+                    start = i + 1;
+                }
+            }
+
+            line.write(bytes, start, offset + length - start);
+        }
+
+        private void finish() {
+            if (line.size() > 0) {
+                emitLine();
+            }
+        }
+
+        private void emitLine() {
+            String record = line.toString(CliOutput.getCharset());
+            line.reset();
+
+            output.emit(record.endsWith("\r") ? record.substring(0, record.length() - 1) : record);
+        }
+    }
+}
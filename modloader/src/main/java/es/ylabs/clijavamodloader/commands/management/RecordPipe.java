@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.commands.management;
+
+import es.ylabs.clijavamodloader.streams.PipeClosedException;
+import es.ylabs.clijavamodloader.streams.RecordSink;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue of records between two stages of a pipeline.
+ * <p>
+ * The writer blocks while the queue is full, so a fast stage can't get ahead
+ * of a slow one by more than the capacity of the queue. Once the reader stops
+ * reading, the queue is closed and the writer gets a
+ * {@link PipeClosedException} on its next record.
+ */
+final class RecordPipe implements RecordSink {
+
+    static final int CAPACITY = 1024;
+
+    private static final long CLOSED_CHECK_MILLIS = 20;
+    // Compared by identity, so it can't be confused with an actual record.
+    private static final String END = new String("END");
+
+    private final ArrayBlockingQueue<String> queue;
+    private volatile boolean closed;
+
+    RecordPipe() {
+        queue = new ArrayBlockingQueue<>(CAPACITY);
+        closed = false;
+    }
+
+    @Override
+    public void emit(String record) {
+        put(Objects.requireNonNull(record, "Records can't be null"));
+    }
+
+    /**
+     * Tells the reader that no more records will be written.
+     */
+    void finish() {
+        try {
+            put(END);
+        } catch (PipeClosedException ignored) {
+            // Nobody is reading anymore.
+        }
+    }
+
+    /**
+     * Closes the pipe from the side of the reader, discarding pending records
+     * and making the writer stop.
+     */
+    void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    /**
+     * Returns the reading end of the pipe. It must be used by a single thread.
+     *
+     * @return An iterator over the records, until the writer finishes.
+     */
+    Iterator<String> reader() {
+        return new Iterator<>() {
+            private String next;
+            private boolean finished;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !finished) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new PipeClosedException("Interrupted while waiting for records");
+                    }
+
+                    if (next == END) {
+                        next = null;
+                        finished = true;
+                    }
+                }
+
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                String record = next;
+                next = null;
+
+                return record;
+            }
+        };
+    }
+
+    private void put(String record) {
+        try {
+            // The timeout only bounds how long a writer takes to notice that
+            // the pipe was closed while it was waiting.
+            boolean written = false;
+
+            while (!closed && !written) {
+                written = queue.offer(record, CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PipeClosedException("Interrupted while writing records");
+        }
+
+        if (closed) {
+            throw new PipeClosedException("The next command in the pipeline has finished");
+        }
+    }
+}
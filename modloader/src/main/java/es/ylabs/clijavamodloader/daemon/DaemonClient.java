@@ -0,0 +1,187 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.daemon;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Thin client of the daemon.
+ * <p>
+ * It sends the command given as arguments, or every line of the standard
+ * input if there is none, prints the output sent back and exits with the
+ * status of the session: 0 if every command succeeded, 1 if any failed and 2
+ * if the daemon couldn't be reached. It loads none of the loader classes, so
+ * it starts as fast as the JVM does.
+ * <p>
+ * Usage: {@code DaemonClient [--socket <path>] [--color] [--json] [command [args...]]}
+ */
+public final class DaemonClient {
+
+    private static final String OPTION_SOCKET = "--socket";
+    private static final String OPTION_COLOR = "--color";
+    private static final String OPTION_JSON = "--json";
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private DaemonClient() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    private static int run(String[] args) {
+        Path socketPath = DaemonProtocol.getDefaultSocketPath();
+        byte flags = 0;
+        int position = 0;
+
+        while (position < args.length && args[position].startsWith("--")) {
+            if (args[position].equals(OPTION_SOCKET) && position + 1 < args.length) {
+                socketPath = Path.of(args[position + 1]);
+                position += 2;
+            } else if (args[position].equals(OPTION_COLOR)) {
+                flags |= DaemonProtocol.FLAG_COLOR;
+                position++;
+            } else if (args[position].equals(OPTION_JSON)) {
+                flags |= DaemonProtocol.FLAG_JSON;
+                position++;
+            } else {
+                System.err.println("Unknown option " + args[position]);
+                return DaemonProtocol.EXIT_CONNECTION_ERROR;
+            }
+        }
+
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            writeFully(channel, ByteBuffer.wrap(new byte[]{ flags }));
+
+            if (position < args.length) {
+                writeFully(channel, ByteBuffer.wrap(toCommandLine(args, position)
+                        .getBytes(StandardCharsets.UTF_8)));
+                channel.shutdownOutput();
+            } else {
+                // The input is sent while the output is read, so neither side
+                // blocks when the other has a lot to send.
+                Thread sender = new Thread(() -> sendInput(channel));
+                sender.setDaemon(true);
+                sender.start();
+            }
+
+            return readOutput(channel);
+        } catch (IOException e) {
+            System.err.println("Unable to reach the daemon at " + socketPath + ": " + e.getMessage());
+            return DaemonProtocol.EXIT_CONNECTION_ERROR;
+        }
+    }
+
+    private static String toCommandLine(String[] args, int first) {
+        StringBuilder line = new StringBuilder();
+
+        for (int i = first; i < args.length; i++) {
+            if (i > first) {
+                line.append(' ');
+            }
+
+            if (!args[i].isEmpty() && args[i].chars().noneMatch(c ->
+                    Character.isWhitespace(c) || c == '"' || c == '\'' || c == '\\')) {
+                line.append(args[i]);
+            } else {
+                line.append('"')
+                        .append(args[i].replace("\\", "\\\\").replace("\"", "\\\""))
+                        .append('"');
+            }
+        }
+
+        return line.append('\n').toString();
+    }
+
+    private static void sendInput(SocketChannel channel) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream input = System.in;
+
+        try {
+            int read;
+
+            while ((read = input.read(buffer)) >= 0) {
+                writeFully(channel, ByteBuffer.wrap(buffer, 0, read));
+            }
+
+            channel.shutdownOutput();
+        } catch (IOException ignored) {
+            // The daemon closed the session, which is reported by the reader.
+        }
+    }
+
+    private static int readOutput(SocketChannel channel) throws IOException {
+        OutputStream output = new FileOutputStream(FileDescriptor.out);
+        ByteBuffer header = ByteBuffer.allocate(DaemonProtocol.FRAME_HEADER_LENGTH);
+        ByteBuffer payload = ByteBuffer.allocate(BUFFER_SIZE);
+
+        while (readFully(channel, header.clear())) {
+            byte type = header.get(0);
+            int length = header.getInt(1);
+
+            if (payload.capacity() < length) {
+                payload = ByteBuffer.allocate(length);
+            }
+
+            if (!readFully(channel, payload.clear().limit(length))) {
+                break;
+            }
+
+            if (type == DaemonProtocol.FRAME_OUTPUT) {
+                output.write(payload.array(), 0, length);
+            } else if (type == DaemonProtocol.FRAME_EXIT) {
+                return payload.getInt(0);
+            }
+        }
+
+        System.err.println("Connection to the daemon lost");
+        return DaemonProtocol.EXIT_CONNECTION_ERROR;
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static boolean readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
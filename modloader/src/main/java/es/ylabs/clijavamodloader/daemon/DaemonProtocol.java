@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.daemon;
+
+import java.nio.file.Path;
+
+/**
+ * Protocol spoken between the daemon and its clients over a Unix domain socket.
+ * <p>
+ * The client sends a flags byte, followed by command lines encoded in UTF-8,
+ * one per line, and then shuts down its side of the connection. The daemon
+ * answers with frames, each made of a type byte, the length of the payload as
+ * an int and the payload: the output of the commands, and a final frame with
+ * the exit status of the session.
+ */
+final class DaemonProtocol {
+
+    static final byte FLAG_COLOR = 1;
+    static final byte FLAG_JSON = 2;
+
+    static final byte FRAME_OUTPUT = 'O';
+    static final byte FRAME_EXIT = 'X';
+    static final int FRAME_HEADER_LENGTH = 5;
+
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_COMMAND_FAILED = 1;
+    static final int EXIT_CONNECTION_ERROR = 2;
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * Returns the socket used when none is given, which is private to the
+     * current user.
+     *
+     * @return The path of the socket.
+     */
+    static Path getDefaultSocketPath() {
+        return Path.of(System.getProperty("java.io.tmpdir"),
+                "cli-java-modloader-" + System.getProperty("user.name") + ".sock");
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.daemon;
+
+import es.ylabs.clijavamodloader.commands.management.CommandCollection;
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the loader running and serves command lines sent by
+ * {@link DaemonClient} over a Unix domain socket.
+ * <p>
+ * Every connection is a {@link DaemonSession}, running on its own virtual
+ * thread. The socket can only be used by the user running the daemon, and it
+ * is deleted when the daemon stops.
+ */
+public final class DaemonServer {
+
+    private final CommandCollection commandCollection;
+    private final Path socketPath;
+    private final AtomicInteger nextSessionId;
+
+    /**
+     * Creates a daemon.
+     *
+     * @param commandCollection The commands sessions run.
+     * @param socketPath The path of the socket, or null to use the default one.
+     */
+    public DaemonServer(CommandCollection commandCollection, String socketPath) {
+        this.commandCollection = commandCollection;
+        this.socketPath = socketPath != null
+                ? Path.of(socketPath)
+                : DaemonProtocol.getDefaultSocketPath();
+        this.nextSessionId = new AtomicInteger(1);
+    }
+
+    /**
+     * Listens for clients until the process is stopped.
+     *
+     * @throws Exception If another daemon is using the socket, or it can't be
+     *      created.
+     */
+    public void run() throws Exception {
+        ServerSocketChannel server = bind();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                Files.deleteIfExists(socketPath);
+            } catch (IOException ignored) {
+            }
+        }));
+
+        ANSIHelpers.printGreenAndBold("Daemon listening on " + socketPath);
+
+        while (true) {
+            SocketChannel channel;
+
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+
+            Thread.ofVirtual()
+                    .name("daemon-session-" + nextSessionId.getAndIncrement())
+                    .start(new DaemonSession(channel, commandCollection));
+        }
+    }
+
+    private ServerSocketChannel bind() throws Exception {
+        if (Files.exists(socketPath)) {
+            // A socket left behind by a daemon that didn't stop cleanly can be
+            // reused, but one that still accepts connections can't.
+            boolean inUse;
+
+            try {
+                SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+                inUse = true;
+            } catch (IOException e) {
+                inUse = false;
+            }
+
+            if (inUse) {
+                throw new Exception("A daemon is already listening on " + socketPath);
+            }
+
+            Files.delete(socketPath);
+        }
+
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+
+        try {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ignored) {
+            // The file system doesn't have POSIX permissions.
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+
+        return server;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.daemon;
+
+import es.ylabs.clijavamodloader.commands.management.CommandCollection;
+import es.ylabs.clijavamodloader.commands.management.SessionExitException;
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+import es.ylabs.clijavamodloader.helpers.OutputControl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A client connected to the daemon.
+ * <p>
+ * The commands of a session run on its own thread, and all their output is
+ * redirected to its client, so sessions never see each other's output or
+ * errors. Modules, on the other hand, are shared: a module loaded by a session
+ * stays loaded for the following ones. {@code exit} ends the session, not the
+ * daemon, wherever it appears in a command line: the daemon makes it throw a
+ * {@link SessionExitException} instead of exiting. Background jobs aren't
+ * available, as they would outlive the session.
+ */
+final class DaemonSession implements Runnable {
+
+    private final SocketChannel channel;
+    private final CommandCollection commandCollection;
+
+    DaemonSession(SocketChannel channel, CommandCollection commandCollection) {
+        this.channel = channel;
+        this.commandCollection = commandCollection;
+    }
+
+    @Override
+    public void run() {
+        try (channel) {
+            InputStream input = Channels.newInputStream(channel);
+            int flags = input.read();
+
+            if (flags < 0) {
+                return;
+            }
+
+            SessionOutputStream output = new SessionOutputStream(channel);
+            int status;
+
+            boolean json = (flags & DaemonProtocol.FLAG_JSON) != 0;
+
+            OutputControl.get().redirect(output, !json && (flags & DaemonProtocol.FLAG_COLOR) != 0, json);
+
+            try {
+                status = runCommands(new BufferedReader(
+                        new InputStreamReader(input, StandardCharsets.UTF_8)));
+            } finally {
+                OutputControl.get().resetRedirect();
+            }
+
+            output.writeExitStatus(status);
+        } catch (IOException ignored) {
+            // The client went away, so there is nobody to report it to.
+        }
+    }
+
+    private int runCommands(BufferedReader reader) throws IOException {
+        long failed = 0;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            String command = line.strip();
+
+            if (command.isEmpty() || command.startsWith("#")) {
+                continue;
+            }
+
+            try {
+                if (commandCollection.isBackgroundCommand(command)) {
+                    throw new Exception("Background jobs are not available in daemon sessions");
+                }
+
+                if (!commandCollection.executeCommand(command)) {
+                    failed++;
+                }
+            } catch (SessionExitException e) {
+                break;
+            } catch (Exception e) {
+                failed++;
+                ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                        "UNKNOWN ERROR"));
+            }
+        }
+
+        return failed == 0 ? DaemonProtocol.EXIT_SUCCESS : DaemonProtocol.EXIT_COMMAND_FAILED;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.daemon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Output stream that sends everything written to it to a client, as output
+ * frames. Every write is sent as a single frame, with a single gathering write
+ * of its header and payload.
+ */
+final class SessionOutputStream extends OutputStream {
+
+    private final SocketChannel channel;
+    private final ByteBuffer header;
+    private final ByteBuffer[] frame;
+
+    SessionOutputStream(SocketChannel channel) {
+        this.channel = channel;
+        this.header = ByteBuffer.allocate(DaemonProtocol.FRAME_HEADER_LENGTH);
+        this.frame = new ByteBuffer[2];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{ (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        writeFrame(DaemonProtocol.FRAME_OUTPUT, ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Sends the exit status of the session, which is the last frame a client
+     * receives.
+     *
+     * @param status The exit status.
+     *
+     * @throws IOException If the client can't be reached.
+     */
+    synchronized void writeExitStatus(int status) throws IOException {
+        writeFrame(DaemonProtocol.FRAME_EXIT, ByteBuffer.allocate(Integer.BYTES).putInt(0, status));
+    }
+
+    private void writeFrame(byte type, ByteBuffer payload) throws IOException {
+        header.clear();
+        header.put(type).putInt(payload.remaining()).flip();
+
+        frame[0] = header;
+        frame[1] = payload;
+
+        while (header.hasRemaining() || payload.hasRemaining()) {
+            channel.write(frame);
+        }
+
+        frame[1] = null;
+    }
+}
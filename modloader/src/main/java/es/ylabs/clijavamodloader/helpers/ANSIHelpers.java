@@ -24,6 +24,8 @@
 
 package es.ylabs.clijavamodloader.helpers;
 
+import es.ylabs.clijavamodloader.output.CliOutput;
+
 public class ANSIHelpers {
     public final static String ANSI_RESET = "\u001B[0m";
 
@@ -50,14 +52,14 @@ public class ANSIHelpers {
 
 
     public static void printGreenAndBold(String message) {
-        System.out.println(ANSI_GREEN + ANSI_BOLD + message + ANSI_RESET);
+        CliOutput.printGreenAndBold(message);
     }
 
     public static void printRedAndBold(String message) {
-        System.out.println(ANSI_RED + ANSI_BOLD + message + ANSI_RESET);
+        CliOutput.printRedAndBold(message);
     }
 
     public static void printYellowAndBold(String message) {
-        System.out.println(ANSI_YELLOW + ANSI_BOLD + message + ANSI_RESET);
+        CliOutput.printYellowAndBold(message);
     }
 }
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory history of the commands typed interactively. Only the most recent
+ * commands are kept, and a command repeated right after itself is stored once.
+ */
+public enum CommandHistory {
+    INSTANCE;
+
+    /**
+     * A command in the history.
+     *
+     * @param number The position of the command since the application started.
+     * @param command The command line.
+     */
+    public record Entry(long number, String command) {
+    }
+
+    private static final int CAPACITY = 500;
+
+    private final String[] entries;
+    private long added;
+
+    CommandHistory() {
+        entries = new String[CAPACITY];
+        added = 0;
+    }
+
+    public CommandHistory getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds a command to the history, dropping the oldest one if it's full.
+     *
+     * @param command The command line.
+     */
+    public synchronized void add(String command) {
+        if (added > 0 && entries[(int) ((added - 1) % CAPACITY)].equals(command)) {
+            return;
+        }
+
+        entries[(int) (added % CAPACITY)] = command;
+        added++;
+    }
+
+    /**
+     * Returns the commands in the history, oldest first.
+     *
+     * @return The commands in the history.
+     */
+    public synchronized List<Entry> getEntries() {
+        long first = Math.max(0, added - CAPACITY);
+        List<Entry> result = new ArrayList<>((int) (added - first));
+
+        for (long number = first; number < added; number++) {
+            result.add(new Entry(number + 1, entries[(int) (number % CAPACITY)]));
+        }
+
+        return result;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(entries, null);
+        added = 0;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Splits command lines into tokens in a single pass.
+ * <p>
+ * Tokens are separated by runs of whitespace. Single quotes preserve every
+ * character up to the closing quote, double quotes do the same except for
+ * {@code \"} and {@code \\}, and a backslash outside quotes escapes the next
+ * character if it is a quote, a backslash, a {@code |}, a {@code &} or
+ * whitespace, so {@code \&} yields a literal {@code &} even at the end of a
+ * line, where an unescaped one runs the command in the background. Any
+ * other backslash is kept as is, so paths such as {@code C:\plugins\foo.jar}
+ * need no quoting. A token without quotes or escapes is taken from the line as
+ * a single substring; any other token is built in a reused buffer.
+ * <p>
+ * An unquoted and unescaped {@code |} splits the line into the stages of a
+ * pipeline, even without whitespace around it.
+ * <p>
+ * Instances keep state between calls and aren't thread safe.
+ */
+public final class CommandLineTokenizer {
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final char PIPE = '|';
+    private static final char BACKGROUND = '&';
+
+    private final StringBuilder buffer;
+    private String[] tokens;
+    private int tokenCount;
+    // The index of the first token after each pipe.
+    private int[] pipes;
+    private int pipeCount;
+
+    public CommandLineTokenizer() {
+        buffer = new StringBuilder();
+        tokens = new String[INITIAL_CAPACITY];
+        tokenCount = 0;
+        pipes = new int[INITIAL_CAPACITY];
+        pipeCount = 0;
+    }
+
+    /**
+     * Splits a command line into tokens, replacing the previous ones.
+     *
+     * @param line The command line.
+     *
+     * @return The number of tokens found.
+     * @throws Exception If a quote isn't closed.
+     */
+    public int tokenize(String line) throws Exception {
+        int length = line.length();
+        int position = 0;
+
+        clear();
+
+        while (position < length) {
+            if (Character.isWhitespace(line.charAt(position))) {
+                position++;
+                continue;
+            } else if (line.charAt(position) == PIPE) {
+                addPipe();
+                position++;
+                continue;
+            }
+
+            int start = position;
+
+            while (position < length && !isSpecial(line.charAt(position))) {
+                position++;
+            }
+
+            if (position == length || Character.isWhitespace(line.charAt(position))
+                    || line.charAt(position) == PIPE) {
+                addToken(line.substring(start, position));
+            } else {
+                buffer.setLength(0);
+                buffer.append(line, start, position);
+                position = readQuotedToken(line, position);
+                addToken(buffer.toString());
+            }
+        }
+
+        return tokenCount;
+    }
+
+    /**
+     * Returns the number of tokens found by the last call to {@link #tokenize(String)}.
+     *
+     * @return The number of tokens.
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Returns the number of pipeline stages found by the last call to
+     * {@link #tokenize(String)}, which is one more than the number of pipes.
+     * Stages may be empty, as in {@code a | | b}.
+     *
+     * @return The number of stages.
+     */
+    public int getStageCount() {
+        return pipeCount + 1;
+    }
+
+    /**
+     * Returns a token found by the last call to {@link #tokenize(String)}.
+     *
+     * @param index The index of the token.
+     *
+     * @return The token.
+     */
+    public String getToken(int index) {
+        if (index >= tokenCount) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        return tokens[index];
+    }
+
+    /**
+     * Copies the tokens found by the last call to {@link #tokenize(String)} into
+     * a new array, which can be safely handed to a command.
+     *
+     * @return The tokens.
+     */
+    public String[] toArray() {
+        return Arrays.copyOf(tokens, tokenCount);
+    }
+
+    /**
+     * Copies the tokens of a pipeline stage found by the last call to
+     * {@link #tokenize(String)} into a new array.
+     *
+     * @param stage The index of the stage.
+     *
+     * @return The tokens of the stage.
+     */
+    public String[] toArray(int stage) {
+        if (stage > pipeCount) {
+            throw new IndexOutOfBoundsException(stage);
+        }
+
+        int from = stage == 0 ? 0 : pipes[stage - 1];
+        int to = stage == pipeCount ? tokenCount : pipes[stage];
+
+        return Arrays.copyOfRange(tokens, from, to);
+    }
+
+    /**
+     * Forgets the tokens found by the last call to {@link #tokenize(String)}.
+     */
+    public void clear() {
+        Arrays.fill(tokens, 0, tokenCount, null);
+        tokenCount = 0;
+        pipeCount = 0;
+    }
+
+    private int readQuotedToken(String line, int position) throws Exception {
+        int length = line.length();
+        char quote = 0;
+
+        while (position < length) {
+            char c = line.charAt(position++);
+
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    buffer.append(c);
+                }
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else if (c == '\\' && position < length
+                        && (line.charAt(position) == '"' || line.charAt(position) == '\\')) {
+                    buffer.append(line.charAt(position++));
+                } else {
+                    buffer.append(c);
+                }
+            } else if (Character.isWhitespace(c) || c == PIPE) {
+                return position - 1;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '\\' && position < length && isEscapable(line.charAt(position))) {
+                buffer.append(line.charAt(position++));
+            } else {
+                buffer.append(c);
+            }
+        }
+
+        if (quote != 0) {
+            throw new Exception("Unterminated quote");
+        }
+
+        return position;
+    }
+
+    private void addToken(String token) {
+        if (tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+
+        tokens[tokenCount++] = token;
+    }
+
+    private void addPipe() {
+        if (pipeCount == pipes.length) {
+            pipes = Arrays.copyOf(pipes, pipes.length * 2);
+        }
+
+        pipes[pipeCount++] = tokenCount;
+    }
+
+    private static boolean isEscapable(char c) {
+        return c == '\'' || c == '"' || c == '\\' || c == PIPE || c == BACKGROUND
+                || Character.isWhitespace(c);
+    }
+
+    private static boolean isSpecial(char c) {
+        return c == '\'' || c == '"' || c == '\\' || c == PIPE || Character.isWhitespace(c);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.helpers;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Switches the terminal to reading one key at a time, without echo, so the
+ * prompt can handle keys such as tab itself. The previous settings are
+ * restored when the JVM exits.
+ * <p>
+ * The terminal is configured with {@code stty}, so this only works on
+ * Unix-like systems; elsewhere lines are read as usual.
+ */
+final class RawTerminal {
+
+    private static final long STTY_TIMEOUT_SECONDS = 2;
+
+    private final String savedSettings;
+
+    private RawTerminal(String savedSettings) {
+        this.savedSettings = savedSettings;
+    }
+
+    /**
+     * Switches the terminal to reading one key at a time.
+     *
+     * @return The terminal, or null if there is no terminal or it can't be
+     *      switched.
+     */
+    static RawTerminal enable() {
+        if (System.console() == null) {
+            return null;
+        }
+
+        try {
+            String savedSettings = stty("-g").strip();
+
+            if (savedSettings.isEmpty()) {
+                return null;
+            }
+
+            stty("-icanon -echo min 1 time 0");
+
+            RawTerminal rawTerminal = new RawTerminal(savedSettings);
+            Runtime.getRuntime().addShutdownHook(new Thread(rawTerminal::restore, "terminal-restore"));
+
+            return rawTerminal;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Restores the settings the terminal had before it was switched.
+     */
+    void restore() {
+        try {
+            stty(savedSettings);
+        } catch (IOException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String stty(String arguments) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("sh", "-c", "stty " + arguments + " < /dev/tty")
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), Charset.defaultCharset());
+
+        if (!process.waitFor(STTY_TIMEOUT_SECONDS, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            process.destroy();
+            throw new IOException("stty failed");
+        }
+
+        return output;
+    }
+}
@@ -24,13 +24,253 @@
 
 package es.ylabs.clijavamodloader.helpers;
 
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.function.Function;
 
-public record ReadString(String prompt) {
-    public String readString() {
-        Scanner input = new Scanner(System.in);
+/**
+ * Reads lines typed after a prompt.
+ * <p>
+ * A single reader is kept for the whole input, reading through a fixed buffer
+ * and building every line in the same string builder, so input that arrives
+ * faster than it's read (such as pasted lines) is never lost. Non-blank lines
+ * are added to the {@link CommandHistory}.
+ * <p>
+ * With a completer and a terminal that can be switched to read one key at a
+ * time, lines are edited by the prompt itself: tab completes the command at
+ * the start of the line or of a pipeline stage, extending it as far as every
+ * candidate agrees and listing the candidates when it can't be extended.
+ */
+public final class ReadString {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final char TAB = '\t';
+    private static final char BACKSPACE = '\b';
+    private static final char DELETE = 127;
+    private static final char END_OF_TRANSMISSION = 4;
+    private static final char KILL_LINE = 21;
+    private static final char ESCAPE = 27;
+    private static final String BELL = "\u0007";
+    private static final String ERASE_CHAR = "\b \b";
+
+    private final String prompt;
+    private final Reader input;
+    private final char[] buffer;
+    private final StringBuilder line;
+    private final CommandHistory history;
+    private final Function<String, List<String>> completer;
+    private final RawTerminal rawTerminal;
+    private int position;
+    private int limit;
+
+    public ReadString(String prompt) {
+        this(prompt, (Function<String, List<String>>) null);
+    }
+
+    /**
+     * Creates a prompt that completes command names, if the terminal allows it.
+     *
+     * @param prompt The prompt.
+     * @param completer A function from a prefix to the command names starting
+     *                  with it, or null to read lines as usual.
+     */
+    public ReadString(String prompt, Function<String, List<String>> completer) {
+        this(prompt, new InputStreamReader(System.in, System.console() != null
+                ? System.console().charset()
+                : Charset.defaultCharset()), completer);
+    }
 
+    public ReadString(String prompt, Reader input) {
+        this(prompt, input, null);
+    }
+
+    private ReadString(String prompt, Reader input, Function<String, List<String>> completer) {
+        this.prompt = prompt;
+        this.input = input;
+        this.buffer = new char[BUFFER_SIZE];
+        this.line = new StringBuilder();
+        this.history = CommandHistory.INSTANCE.getInstance();
+        this.completer = completer;
+        this.rawTerminal = completer != null ? RawTerminal.enable() : null;
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Prints the prompt and reads a line.
+     *
+     * @return The line, without its terminator, or null at the end of the input.
+     * @throws IOException If the input can't be read.
+     */
+    public String readString() throws IOException {
         System.out.print(prompt);
-        return input.nextLine();
+        System.out.flush();
+
+        String result = rawTerminal != null ? editLine() : readLine();
+
+        if (result != null && !result.isBlank()) {
+            history.add(result);
+        }
+
+        return result;
+    }
+
+    private String readLine() throws IOException {
+        line.setLength(0);
+
+        while (true) {
+            if (position == limit) {
+                int read = input.read(buffer, 0, buffer.length);
+
+                if (read < 0) {
+                    // The last line may not be terminated.
+                    return line.isEmpty() ? null : line.toString();
+                }
+
+                position = 0;
+                limit = read;
+            }
+
+            int start = position;
+
+            while (position < limit) {
+                if (buffer[position++] == '\n') {
+                    line.append(buffer, start, position - 1 - start);
+
+                    if (!line.isEmpty() && line.charAt(line.length() - 1) == '\r') {
+                        line.setLength(line.length() - 1);
+                    }
+
+                    return line.toString();
+                }
+            }
+
+            line.append(buffer, start, limit - start);
+        }
+    }
+
+    private String editLine() throws IOException {
+        line.setLength(0);
+
+        while (true) {
+            int c = nextChar();
+
+            if (c < 0) {
+                return line.isEmpty() ? null : line.toString();
+            }
+
+            switch (c) {
+                case '\n', '\r' -> {
+                    echo(System.lineSeparator());
+                    return line.toString();
+                }
+                case TAB -> complete();
+                case DELETE, BACKSPACE -> {
+                    if (!line.isEmpty()) {
+                        line.setLength(line.length() - 1);
+                        echo(ERASE_CHAR);
+                    }
+                }
+                case KILL_LINE -> {
+                    echo(ERASE_CHAR.repeat(line.length()));
+                    line.setLength(0);
+                }
+                case END_OF_TRANSMISSION -> {
+                    if (line.isEmpty()) {
+                        return null;
+                    }
+                }
+                case ESCAPE -> skipEscapeSequence();
+                default -> {
+                    if (c >= ' ') {
+                        line.append((char) c);
+                        echo(String.valueOf((char) c));
+                    }
+                }
+            }
+        }
+    }
+
+    private void complete() {
+        // Only the command of the last pipeline stage is completed.
+        String stage = line.substring(line.lastIndexOf("|") + 1).stripLeading();
+
+        if (stage.chars().anyMatch(Character::isWhitespace)) {
+            echo(BELL);
+            return;
+        }
+
+        List<String> candidates = completer.apply(stage);
+
+        if (candidates.isEmpty()) {
+            echo(BELL);
+        } else if (candidates.size() == 1) {
+            String completion = candidates.get(0).substring(stage.length()) + " ";
+            line.append(completion);
+            echo(completion);
+        } else {
+            String common = commonPrefix(candidates);
+
+            if (common.length() > stage.length()) {
+                String completion = common.substring(stage.length());
+                line.append(completion);
+                echo(completion);
+            } else {
+                echo(System.lineSeparator() + String.join("  ", candidates) + System.lineSeparator()
+                        + prompt + line);
+            }
+        }
+    }
+
+    private void skipEscapeSequence() throws IOException {
+        // Keys such as the arrows send ESC [ followed by parameters and a
+        // final character, which aren't handled.
+        if (nextChar() == '[') {
+            int c;
+
+            do {
+                c = nextChar();
+            } while (c >= 0 && (c < 0x40 || c > 0x7E));
+        }
+    }
+
+    private int nextChar() throws IOException {
+        if (position == limit) {
+            int read = input.read(buffer, 0, buffer.length);
+
+            if (read < 0) {
+                return -1;
+            }
+
+            position = 0;
+            limit = read;
+        }
+
+        return buffer[position++];
+    }
+
+    private static String commonPrefix(List<String> candidates) {
+        String common = candidates.get(0);
+
+        for (String candidate : candidates) {
+            int length = 0;
+
+            while (length < common.length() && length < candidate.length()
+                    && common.charAt(length) == candidate.charAt(length)) {
+                length++;
+            }
+
+            common = common.substring(0, length);
+        }
+
+        return common;
+    }
+
+    private static void echo(String text) {
+        System.out.print(text);
+        System.out.flush();
     }
 }
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.helpers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the phases of the startup of the application.
+ * <p>
+ * The first phase goes from the start of the process, as reported by the
+ * operating system, to the first use of this class, which should be at the
+ * beginning of {@code main}. Every other phase goes from the end of the
+ * previous one to the call to {@link #mark(String)} that names it. Work that
+ * is deferred until it's first needed is timed on its own, with
+ * {@link #record(String, long)}, as it may happen during any phase or after
+ * startup.
+ */
+public enum StartupTimer {
+    INSTANCE;
+
+    /**
+     * A finished phase.
+     *
+     * @param name The name of the phase.
+     * @param nanos How long the phase took.
+     * @param deferred Whether the phase ran on its own, outside the startup
+     *                 sequence.
+     */
+    public record Phase(String name, long nanos, boolean deferred) {
+    }
+
+    private final long startNanos;
+    private final List<Phase> phases;
+    private long lastMarkNanos;
+
+    StartupTimer() {
+        startNanos = System.nanoTime();
+        lastMarkNanos = startNanos;
+        phases = new ArrayList<>();
+
+        ProcessHandle.current().info().startInstant().ifPresent(processStart -> phases.add(
+                new Phase("jvm", Duration.between(processStart, Instant.now()).toNanos(), false)));
+    }
+
+    public StartupTimer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Ends the current phase.
+     *
+     * @param phase The name of the phase.
+     */
+    public synchronized void mark(String phase) {
+        long now = System.nanoTime();
+
+        phases.add(new Phase(phase, now - lastMarkNanos, false));
+        lastMarkNanos = now;
+    }
+
+    /**
+     * Records deferred work, which isn't part of the startup sequence.
+     *
+     * @param phase The name of the work.
+     * @param nanos How long the work took.
+     */
+    public synchronized void record(String phase, long nanos) {
+        phases.add(new Phase(phase, nanos, true));
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return List.copyOf(phases);
+    }
+
+    /**
+     * Prints how long every phase of the startup took and the total, followed
+     * by the deferred work done so far.
+     */
+    public void printReport() {
+        List<Phase> finishedPhases = getPhases();
+        long total = 0;
+
+        for (Phase phase : finishedPhases) {
+            if (!phase.deferred()) {
+                printPhase(phase.name(), phase.nanos());
+                total += phase.nanos();
+            }
+        }
+
+        printPhase("total", total);
+
+        for (Phase phase : finishedPhases) {
+            if (phase.deferred()) {
+                printPhase(phase.name() + " (deferred)", phase.nanos());
+            }
+        }
+    }
+
+    private void printPhase(String name, long nanos) {
+        ANSIHelpers.printYellowAndBold(String.format(Locale.ROOT, "%-26s %9.3f ms",
+                name, nanos / 1_000_000.0));
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import es.ylabs.clijavamodloader.annotations.Arg;
+import es.ylabs.clijavamodloader.annotations.Flag;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Checks and converts the arguments of a typed command method.
+ * <p>
+ * Everything that depends on the signature of the method is worked out once,
+ * when the command is bound: where each argument goes, how it's converted and
+ * the default values. The result is a method handle taking the raw
+ * {@code String[]}, with a converter per parameter filtering it into the
+ * parameter types of the method. A call then only converts each argument, with
+ * no reflection, no boxing of primitive arguments and no array of converted
+ * values.
+ * <p>
+ * The converters read the arguments from a layout of the call: the command
+ * name, then a slot per flag, which isn't null if the flag was given, and then
+ * the positional arguments in order. Without flags, the layout is the
+ * {@code String[]} of the call itself, so no array is allocated for it.
+ */
+final class ArgumentBinder {
+
+    private static final MethodHandle LAYOUT;
+    private static final MethodHandle ELEMENT = MethodHandles.arrayElementGetter(String[].class);
+    private static final MethodHandle IS_FLAG_SET;
+    private static final MethodHandle HAS_ELEMENT;
+    private static final MethodHandle COUNT_FROM;
+    private static final MethodHandle ELEMENT_FROM;
+    private static final MethodHandle INVALID_VALUE;
+    private static final MethodHandle PARSE_INT;
+    private static final MethodHandle PARSE_LONG;
+    private static final MethodHandle PARSE_DOUBLE;
+    private static final MethodHandle PARSE_BOOLEAN;
+    private static final MethodHandle PARSE_PATH;
+    private static final MethodHandle PARSE_ENUM;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType flagType = MethodType.methodType(boolean.class, String[].class, int.class);
+
+        try {
+            LAYOUT = lookup.findVirtual(ArgumentBinder.class, "layout",
+                    MethodType.methodType(String[].class, String[].class));
+            IS_FLAG_SET = lookup.findStatic(ArgumentBinder.class, "isFlagSet", flagType);
+            HAS_ELEMENT = lookup.findStatic(ArgumentBinder.class, "hasElement", flagType);
+            COUNT_FROM = lookup.findStatic(ArgumentBinder.class, "countFrom",
+                    MethodType.methodType(int.class, String[].class, int.class));
+            ELEMENT_FROM = lookup.findStatic(ArgumentBinder.class, "elementFrom",
+                    MethodType.methodType(String.class, String[].class, int.class, int.class));
+            INVALID_VALUE = lookup.findStatic(ArgumentBinder.class, "invalidValue",
+                    MethodType.methodType(Object.class, String.class, String.class,
+                            IllegalArgumentException.class, String.class));
+            PARSE_INT = lookup.findStatic(ArgumentBinder.class, "parseInt",
+                    MethodType.methodType(int.class, String.class));
+            PARSE_LONG = lookup.findStatic(ArgumentBinder.class, "parseLong",
+                    MethodType.methodType(long.class, String.class));
+            PARSE_DOUBLE = lookup.findStatic(ArgumentBinder.class, "parseDouble",
+                    MethodType.methodType(double.class, String.class));
+            PARSE_BOOLEAN = lookup.findStatic(ArgumentBinder.class, "parseBoolean",
+                    MethodType.methodType(boolean.class, String.class));
+            PARSE_PATH = lookup.findStatic(ArgumentBinder.class, "parsePath",
+                    MethodType.methodType(Path.class, String.class));
+            PARSE_ENUM = lookup.findStatic(ArgumentBinder.class, "parseEnum",
+                    MethodType.methodType(Object.class, Map.class, String.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String usage;
+    private final int parameterCount;
+    private final Map<String, Integer> flags;
+    private final int[] flagIndexes;
+    private final Positional[] positionals;
+    private final int requiredCount;
+    private final Positional varargs;
+
+    private ArgumentBinder(String usage, int parameterCount, Map<String, Integer> flags, int[] flagIndexes,
+                           Positional[] positionals, int requiredCount, Positional varargs) {
+        this.usage = usage;
+        this.parameterCount = parameterCount;
+        this.flags = flags;
+        this.flagIndexes = flagIndexes;
+        this.positionals = positionals;
+        this.requiredCount = requiredCount;
+        this.varargs = varargs;
+    }
+
+    /**
+     * Tells whether a command method is a typed one, rather than one taking
+     * the raw arguments.
+     *
+     * @param method The command method.
+     *
+     * @return True if any of its parameters is annotated with {@link Arg} or
+     *      {@link Flag}, or it has none.
+     */
+    static boolean isTyped(Method method) {
+        return method.getParameterCount() == 0 || Arrays.stream(method.getParameters())
+                .anyMatch(parameter -> parameter.isAnnotationPresent(Arg.class)
+                        || parameter.isAnnotationPresent(Flag.class));
+    }
+
+    /**
+     * Works out how to bind the arguments of a typed command method.
+     *
+     * @param command The name of the command.
+     * @param method The command method.
+     *
+     * @return The argument binder.
+     * @throws Exception If a parameter isn't annotated, has an unsupported
+     *      type or an invalid default value.
+     */
+    static ArgumentBinder create(String command, Method method) throws Exception {
+        Parameter[] parameters = method.getParameters();
+        Map<String, Integer> flags = new HashMap<>();
+        int[] flagIndexes = new int[parameters.length];
+        Positional[] positionals = new Positional[parameters.length];
+        int positionalCount = 0;
+        int requiredCount = 0;
+        Positional varargs = null;
+        boolean varargsRequired = false;
+        StringBuilder usage = new StringBuilder("Usage: ").append(command);
+
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter parameter = parameters[i];
+            Flag flag = parameter.getAnnotation(Flag.class);
+            Arg arg = parameter.getAnnotation(Arg.class);
+
+            if (flag != null) {
+                if (parameter.getType() != boolean.class) {
+                    throw new Exception("Flag " + flag.value() + " of command method " + method.getName()
+                            + " must be a boolean");
+                } else if (flags.putIfAbsent(flag.value(), flags.size() + 1) != null) {
+                    throw new Exception("Duplicate flag " + flag.value() + " in command method "
+                            + method.getName());
+                }
+
+                flagIndexes[flags.size() - 1] = i;
+                usage.append(" [").append(flag.value()).append(']');
+                continue;
+            } else if (arg == null) {
+                throw new Exception("Parameter " + (i + 1) + " of command method " + method.getName()
+                        + " needs @Arg or @Flag");
+            }
+
+            boolean isArray = parameter.getType().isArray();
+            Class<?> type = isArray ? parameter.getType().getComponentType() : parameter.getType();
+            boolean required = arg.defaultValue().equals(Arg.REQUIRED);
+            MethodHandle converter = converterFor(type);
+
+            if (converter == null) {
+                throw new Exception("Unsupported type " + type.getSimpleName() + " of argument "
+                        + arg.value() + " in command method " + method.getName());
+            } else if (isArray && i != parameters.length - 1) {
+                throw new Exception("Only the last argument of command method " + method.getName()
+                        + " can be an array");
+            } else if (required && positionalCount > requiredCount) {
+                throw new Exception("Required argument " + arg.value() + " of command method "
+                        + method.getName() + " can't follow an optional one");
+            }
+
+            Object defaultValue = null;
+
+            if (!required && !isArray) {
+                try {
+                    defaultValue = converter.invoke(arg.defaultValue());
+                } catch (IllegalArgumentException e) {
+                    throw new Exception("Invalid default value of argument " + arg.value()
+                            + " in command method " + method.getName() + ": " + e.getMessage());
+                } catch (Throwable t) {
+                    throw new Exception("Unable to convert the default value of argument " + arg.value()
+                            + " in command method " + method.getName(), t);
+                }
+            }
+
+            Positional positional = new Positional(i, arg.value(), type, converter, required, defaultValue);
+
+            if (isArray) {
+                varargs = positional;
+                varargsRequired = required;
+                usage.append(required ? " <" + arg.value() + ">..." : " [" + arg.value() + "...]");
+            } else {
+                positionals[positionalCount++] = positional;
+                usage.append(required ? " <" + arg.value() + ">" : " [" + arg.value() + "]");
+
+                if (required) {
+                    requiredCount++;
+                }
+            }
+        }
+
+        if (varargsRequired) {
+            // At least one argument must be left for a required array.
+            requiredCount = positionalCount + 1;
+        }
+
+        return new ArgumentBinder(usage.toString(), parameters.length, Map.copyOf(flags),
+                Arrays.copyOf(flagIndexes, flags.size()), Arrays.copyOf(positionals, positionalCount),
+                requiredCount, varargs);
+    }
+
+    String getUsage() {
+        return usage;
+    }
+
+    /**
+     * Adapts a method handle taking the parameters of the method so it takes
+     * the raw arguments of a call instead.
+     *
+     * @param target The method handle, bound to the group instance.
+     *
+     * @return A method handle taking the command and its arguments. It throws
+     *      {@link IllegalArgumentException} if an argument is missing, left
+     *      over or can't be converted, with the usage in the message.
+     */
+    MethodHandle bind(MethodHandle target) {
+        MethodHandle[] extractors = new MethodHandle[parameterCount];
+        int firstPositionalSlot = 1 + flags.size();
+
+        for (int i = 0; i < flagIndexes.length; i++) {
+            extractors[flagIndexes[i]] = MethodHandles.insertArguments(IS_FLAG_SET, 1, i + 1);
+        }
+
+        for (int i = 0; i < positionals.length; i++) {
+            extractors[positionals[i].index()] = positionalExtractor(positionals[i], firstPositionalSlot + i);
+        }
+
+        if (varargs != null) {
+            extractors[varargs.index()] = varargsExtractor(firstPositionalSlot + positionals.length);
+        }
+
+        // Every extractor takes the layout, so it's passed to all of them.
+        MethodHandle bound = parameterCount == 0
+                ? MethodHandles.dropArguments(target, 0, String[].class)
+                : MethodHandles.permuteArguments(MethodHandles.filterArguments(target, 0, extractors),
+                        MethodType.methodType(void.class, String[].class), new int[parameterCount]);
+
+        return MethodHandles.filterArguments(bound, 0, LAYOUT.bindTo(this));
+    }
+
+    /**
+     * Checks the number of arguments of a call and lays them out as the
+     * converters expect.
+     *
+     * @param args The command and its arguments.
+     *
+     * @return The layout of the call.
+     * @throws IllegalArgumentException If an argument is missing or left over.
+     */
+    private String[] layout(String[] args) {
+        String[] layout = args;
+        int tokenCount = args.length - 1;
+
+        if (!flags.isEmpty()) {
+            for (int i = 1; i < args.length; i++) {
+                if (flags.containsKey(args[i])) {
+                    tokenCount--;
+                }
+            }
+
+            layout = new String[1 + flags.size() + tokenCount];
+            layout[0] = args[0];
+            int position = 1 + flags.size();
+
+            for (int i = 1; i < args.length; i++) {
+                Integer flagSlot = flags.get(args[i]);
+
+                if (flagSlot != null) {
+                    layout[flagSlot] = args[i];
+                } else {
+                    layout[position++] = args[i];
+                }
+            }
+        }
+
+        if (tokenCount < requiredCount) {
+            throw new IllegalArgumentException("Missing argument <" + (tokenCount < positionals.length
+                    ? positionals[tokenCount].name()
+                    : varargs.name()) + ">. " + usage);
+        } else if (varargs == null && tokenCount > positionals.length) {
+            throw new IllegalArgumentException("Too many arguments. " + usage);
+        }
+
+        return layout;
+    }
+
+    /**
+     * Builds the converter of a positional argument, taking the layout.
+     */
+    private MethodHandle positionalExtractor(Positional positional, int slot) {
+        MethodHandle convert = MethodHandles.filterArguments(checkedConverter(positional), 0,
+                MethodHandles.insertArguments(ELEMENT, 1, slot));
+
+        if (positional.required()) {
+            return convert;
+        }
+
+        return MethodHandles.guardWithTest(MethodHandles.insertArguments(HAS_ELEMENT, 1, slot), convert,
+                MethodHandles.dropArguments(MethodHandles.constant(positional.type(), positional.defaultValue()),
+                        0, String[].class));
+    }
+
+    /**
+     * Builds the converter of the array argument, taking the layout. The array
+     * is filled by a counted loop, so primitive elements are never boxed.
+     */
+    private MethodHandle varargsExtractor(int firstSlot) {
+        Class<?> arrayType = varargs.type().arrayType();
+        MethodHandle count = MethodHandles.insertArguments(COUNT_FROM, 1, firstSlot);
+        MethodHandle init = MethodHandles.filterArguments(MethodHandles.arrayConstructor(arrayType), 0, count);
+
+        // (String[] layout, int i) -> converted element i
+        MethodHandle element = MethodHandles.filterReturnValue(
+                MethodHandles.insertArguments(ELEMENT_FROM, 1, firstSlot), checkedConverter(varargs));
+        // (array, int i, String[] layout) -> array, after setting element i
+        MethodHandle set = MethodHandles.permuteArguments(
+                MethodHandles.collectArguments(MethodHandles.arrayElementSetter(arrayType), 2, element),
+                MethodType.methodType(void.class, arrayType, int.class, String[].class), 0, 1, 2, 1);
+        MethodHandle body = MethodHandles.foldArguments(MethodHandles.dropArguments(
+                MethodHandles.identity(arrayType), 1, int.class, String[].class), set);
+
+        return MethodHandles.countedLoop(count, init, body);
+    }
+
+    /**
+     * Wraps the converter of an argument so its errors tell which argument and
+     * value were wrong, and the usage.
+     */
+    private MethodHandle checkedConverter(Positional positional) {
+        MethodHandle handler = MethodHandles.insertArguments(INVALID_VALUE, 0, positional.name(), usage)
+                .asType(MethodType.methodType(positional.type(), IllegalArgumentException.class, String.class));
+
+        return MethodHandles.catchException(positional.converter(), IllegalArgumentException.class, handler);
+    }
+
+    private static boolean isFlagSet(String[] layout, int slot) {
+        return layout[slot] != null;
+    }
+
+    private static boolean hasElement(String[] layout, int slot) {
+        return slot < layout.length;
+    }
+
+    private static int countFrom(String[] layout, int firstSlot) {
+        return Math.max(0, layout.length - firstSlot);
+    }
+
+    private static String elementFrom(String[] layout, int firstSlot, int index) {
+        return layout[firstSlot + index];
+    }
+
+    private static Object invalidValue(String name, String usage, IllegalArgumentException e, String token) {
+        throw new IllegalArgumentException("Invalid value \"" + token + "\" for <" + name + ">: "
+                + e.getMessage() + ". " + usage);
+    }
+
+    /**
+     * Gets the converter of an argument type.
+     *
+     * @param type The type.
+     *
+     * @return A method handle converting a {@code String} into the type, which
+     *      throws {@link IllegalArgumentException} with a message telling what
+     *      was expected, or null if the type isn't supported.
+     */
+    private static MethodHandle converterFor(Class<?> type) {
+        if (type == String.class) {
+            return MethodHandles.identity(String.class);
+        } else if (type == int.class || type == Integer.class) {
+            return PARSE_INT.asType(MethodType.methodType(type, String.class));
+        } else if (type == long.class || type == Long.class) {
+            return PARSE_LONG.asType(MethodType.methodType(type, String.class));
+        } else if (type == double.class || type == Double.class) {
+            return PARSE_DOUBLE.asType(MethodType.methodType(type, String.class));
+        } else if (type == boolean.class || type == Boolean.class) {
+            return PARSE_BOOLEAN.asType(MethodType.methodType(type, String.class));
+        } else if (type == Path.class) {
+            return PARSE_PATH;
+        } else if (type.isEnum()) {
+            Map<String, Object> constants = new HashMap<>();
+
+            for (Object constant : type.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name().toLowerCase(Locale.ROOT), constant);
+            }
+
+            String expected = "expected one of " + constants.keySet().stream().sorted()
+                    .collect(Collectors.joining(", "));
+
+            return MethodHandles.insertArguments(PARSE_ENUM, 0, Map.copyOf(constants), expected)
+                    .asType(MethodType.methodType(type, String.class));
+        } else {
+            return null;
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected an integer");
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected an integer");
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected a number");
+        }
+    }
+
+    private static boolean parseBoolean(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw new IllegalArgumentException("expected true or false");
+        };
+    }
+
+    private static Path parsePath(String value) {
+        try {
+            return Path.of(value);
+        } catch (InvalidPathException e) {
+            throw new IllegalArgumentException("expected a path");
+        }
+    }
+
+    private static Object parseEnum(Map<String, Object> constants, String expected, String value) {
+        Object constant = constants.get(value.toLowerCase(Locale.ROOT));
+
+        if (constant == null) {
+            throw new IllegalArgumentException(expected);
+        }
+
+        return constant;
+    }
+
+    private record Positional(int index, String name, Class<?> type, MethodHandle converter, boolean required,
+                              Object defaultValue) {
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import es.ylabs.clijavamodloader.helpers.OutputControl;
+import es.ylabs.clijavamodloader.output.CliOutput;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A command whose output is cached, declared with
+ * {@link es.ylabs.clijavamodloader.annotations.CliCommand#cacheable()}.
+ * <p>
+ * The output of every run is captured, and replayed by later runs with the
+ * same arguments until it expires. Outputs are kept in a concurrent map with a
+ * maximum number of entries; when it's exceeded, the oldest ones are evicted.
+ * An expired entry keeps its place until it's replaced by a new run. Runs that
+ * fail aren't cached.
+ */
+final class CachedCommand implements Consumer<String[]> {
+
+    private final Consumer<String[]> command;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ConcurrentHashMap<Key, Entry> entries;
+    // Keys in the order they were added, to evict the oldest ones first.
+    private final ConcurrentLinkedQueue<Key> insertionOrder;
+
+    /**
+     * Creates a cached command.
+     *
+     * @param command The command whose output is cached.
+     * @param ttlMillis How long an output is replayed, in milliseconds.
+     * @param maxEntries How many outputs are cached at most.
+     *
+     * @throws Exception If any of the limits isn't positive.
+     */
+    CachedCommand(Consumer<String[]> command, long ttlMillis, int maxEntries) throws Exception {
+        if (ttlMillis <= 0 || maxEntries <= 0) {
+            throw new Exception("Invalid cache settings");
+        }
+
+        this.command = command;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxEntries = maxEntries;
+        this.entries = new ConcurrentHashMap<>();
+        this.insertionOrder = new ConcurrentLinkedQueue<>();
+    }
+
+    @Override
+    public void accept(String[] args) {
+        // The output depends on whether styles are written and on whether it's
+        // structured, so each variant is cached separately.
+        Key key = new Key(CliOutput.isColorEnabled(), CliOutput.isStructured(), List.of(args));
+        Entry entry = entries.get(key);
+
+        if (entry != null && System.nanoTime() - entry.createdAt() < ttlNanos) {
+            OutputControl.get().write(entry.output());
+            return;
+        }
+
+        CliOutput.Capture capture = OutputControl.get().startCapture();
+        byte[] output;
+
+        try {
+            command.accept(args);
+        } finally {
+            output = capture.stop();
+        }
+
+        // Failures aren't cached, like the ones thrown as exceptions.
+        if (OutputControl.get().isFailureReported()) {
+            return;
+        }
+
+        if (entries.put(key, new Entry(output, System.nanoTime())) == null) {
+            insertionOrder.add(key);
+
+            while (entries.size() > maxEntries) {
+                Key oldest = insertionOrder.poll();
+
+                if (oldest == null) {
+                    break;
+                }
+
+                entries.remove(oldest);
+            }
+        }
+    }
+
+    /**
+     * Drops every cached output.
+     */
+    void invalidate() {
+        entries.clear();
+        insertionOrder.clear();
+    }
+
+    private record Key(boolean colorEnabled, boolean structured, List<String> args) {
+    }
+
+    private record Entry(byte[] output, long createdAt) {
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.commands.management.PipelineStages;
+import es.ylabs.clijavamodloader.streams.RecordSink;
+import es.ylabs.clijavamodloader.streams.StreamingCommand;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Binds command methods to {@link Consumer} instances.
+ * <p>
+ * Each command is bound once, when its module is loaded. Public methods of
+ * public groups are bound through {@link LambdaMetafactory}, so the resulting
+ * consumer calls the command method directly and the JIT can inline it. Any
+ * other method is bound to a {@link MethodHandle}, which is made a constant of
+ * a hidden copy of {@link MethodHandleCommand} or
+ * {@link MethodHandleStreamingCommand}, so it can be inlined as well. In both cases there is no boxing, access check or exception wrapping
+ * on each call, as there is with {@link Method#invoke(Object, Object...)}.
+ * <p>
+ * Methods taking {@code (String[], Iterator<String>, RecordSink)} are bound
+ * as {@link StreamingCommand}s, and the returned consumer also implements that
+ * interface, so they can be piped. Methods with typed parameters get an
+ * {@link ArgumentBinder}, which adapts their method handle to convert the
+ * arguments of each call, and are bound through a hidden class as well.
+ */
+public final class CommandBinder {
+
+    private static final MethodType ERASED_ACCEPT_TYPE = MethodType.methodType(void.class, Object.class);
+    private static final MethodType COMMAND_TYPE = MethodType.methodType(void.class, String[].class);
+    private static final MethodType STREAMING_COMMAND_TYPE = MethodType.methodType(void.class,
+            String[].class, Iterator.class, RecordSink.class);
+
+    /**
+     * Bytes of the template classes, read once from the class path.
+     */
+    private static final ClassValue<byte[]> TEMPLATE_BYTES = new ClassValue<>() {
+        @Override
+        protected byte[] computeValue(Class<?> templateClass) {
+            try (InputStream inputStream = Objects.requireNonNull(templateClass
+                    .getResourceAsStream(templateClass.getSimpleName() + ".class"))) {
+                return inputStream.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    private CommandBinder() {
+    }
+
+    /**
+     * Binds a command method to an instance of its group.
+     *
+     * @param method The command method. It must take a single {@code String[]},
+     *               a {@code String[]}, an {@code Iterator<String>} and a
+     *               {@link RecordSink}, or typed parameters annotated with
+     *               {@link es.ylabs.clijavamodloader.annotations.Arg} or
+     *               {@link es.ylabs.clijavamodloader.annotations.Flag}.
+     * @param groupInstance The instance of the group declaring the method.
+     *
+     * @return A consumer that invokes the command method on the group instance.
+     * @throws Exception If the method has an invalid signature or can't be bound.
+     */
+    public static Consumer<String[]> bind(Method method, Object groupInstance) throws Exception {
+        Class<?> groupClass = method.getDeclaringClass();
+
+        if (Modifier.isStatic(method.getModifiers())) {
+            throw new Exception("Command method " + method.getName() + " can't be static");
+        }
+
+        if (ArgumentBinder.isTyped(method)) {
+            return bindTyped(method, groupInstance);
+        }
+
+        boolean streaming = isStreaming(method);
+
+        if (!streaming && (method.getParameterCount() != 1 || method.getParameterTypes()[0] != String[].class)) {
+            throw new Exception("Command method " + method.getName() + " must take a String[],"
+                    + " a String[], an Iterator<String> and a RecordSink, or parameters annotated with"
+                    + " @Arg or @Flag");
+        }
+
+        boolean accessible = Modifier.isPublic(groupClass.getModifiers())
+                && Modifier.isPublic(method.getModifiers());
+
+        if (streaming) {
+            return new BoundStreamingCommand(accessible
+                    ? bindLambda(method, groupInstance, StreamingCommand.class, "run",
+                            STREAMING_COMMAND_TYPE)
+                    : (StreamingCommand) bindMethodHandle(method, groupInstance,
+                            MethodHandleStreamingCommand.class));
+        } else if (accessible) {
+            @SuppressWarnings("unchecked")
+            Consumer<String[]> command = bindLambda(method, groupInstance, Consumer.class, "accept",
+                    ERASED_ACCEPT_TYPE);
+
+            return command;
+        } else {
+            @SuppressWarnings("unchecked")
+            Consumer<String[]> command = (Consumer<String[]>) bindMethodHandle(method, groupInstance,
+                    MethodHandleCommand.class);
+
+            return command;
+        }
+    }
+
+    /**
+     * Tells whether a command method has the signature of a streaming command.
+     *
+     * @param method The command method.
+     *
+     * @return True if it takes a {@code String[]}, an {@code Iterator} and a
+     *      {@link RecordSink}.
+     */
+    private static boolean isStreaming(Method method) {
+        return Arrays.equals(method.getParameterTypes(), STREAMING_COMMAND_TYPE.parameterArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T bindLambda(Method method, Object groupInstance, Class<T> interfaceClass,
+                                    String interfaceMethod, MethodType erasedType) throws Exception {
+        Class<?> groupClass = method.getDeclaringClass();
+        MethodHandles.Lookup lookup = definingLookup(groupClass);
+
+        try {
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, interfaceMethod,
+                    MethodType.methodType(interfaceClass, groupClass), erasedType,
+                    lookup.unreflect(method), method.getParameterCount() == 1
+                            ? COMMAND_TYPE : STREAMING_COMMAND_TYPE);
+
+            return (T) callSite.getTarget().invoke(groupInstance);
+        } catch (Error | Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new Exception("Unable to bind command method " + method.getName(), t);
+        }
+    }
+
+    private static Object bindMethodHandle(Method method, Object groupInstance, Class<?> templateClass)
+            throws Exception {
+        Class<?> groupClass = method.getDeclaringClass();
+        MethodHandle target = MethodHandles.privateLookupIn(groupClass, MethodHandles.lookup())
+                .unreflect(method)
+                .bindTo(groupInstance)
+                .asType(method.getParameterCount() == 1 ? COMMAND_TYPE : STREAMING_COMMAND_TYPE);
+
+        return defineCommand(groupClass, templateClass, target);
+    }
+
+    /**
+     * Defines a hidden copy of a template class with a method handle as its
+     * class data, and creates an instance of it.
+     *
+     * @param groupClass The class of the group declaring the command.
+     * @param templateClass {@link MethodHandleCommand} or
+     *                      {@link MethodHandleStreamingCommand}.
+     * @param target The method handle, of the exact type the template invokes.
+     *
+     * @return The instance of the hidden class.
+     * @throws Exception If the class can't be defined or instantiated.
+     */
+    private static Object defineCommand(Class<?> groupClass, Class<?> templateClass, MethodHandle target)
+            throws Exception {
+        MethodHandles.Lookup commandLookup = definingLookup(groupClass)
+                .defineHiddenClassWithClassData(TEMPLATE_BYTES.get(templateClass), target, true);
+
+        try {
+            return commandLookup.findConstructor(commandLookup.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (Error | Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new Exception("Unable to create command class " + templateClass.getSimpleName(), t);
+        }
+    }
+
+    /**
+     * Gets the lookup that defines the classes implementing the commands of a
+     * group.
+     * <p>
+     * Classes are defined by the class loader of the lookup, so module commands
+     * must use the module class loader: otherwise the classes could neither see
+     * the group class nor be unloaded with the module.
+     *
+     * @param groupClass The class of the group.
+     *
+     * @return The lookup.
+     * @throws Exception If the lookup of a module can't be defined.
+     */
+    private static MethodHandles.Lookup definingLookup(Class<?> groupClass) throws Exception {
+        return groupClass.getClassLoader() instanceof ModuleClassLoader moduleClassLoader
+                ? moduleClassLoader.getLookup()
+                : MethodHandles.lookup();
+    }
+
+    private static Consumer<String[]> bindTyped(Method method, Object groupInstance) throws Exception {
+        CliCommand cliCommand = method.getAnnotation(CliCommand.class);
+        ArgumentBinder argumentBinder = ArgumentBinder.create(
+                cliCommand != null ? cliCommand.command() : method.getName(), method);
+        Class<?> groupClass = method.getDeclaringClass();
+        MethodHandle target = MethodHandles.privateLookupIn(groupClass, MethodHandles.lookup())
+                .unreflect(method)
+                .asFixedArity()
+                .bindTo(groupInstance);
+
+        @SuppressWarnings("unchecked")
+        Consumer<String[]> command = (Consumer<String[]>) defineCommand(groupClass, MethodHandleCommand.class,
+                argumentBinder.bind(target.asType(target.type().changeReturnType(void.class))));
+
+        return command;
+    }
+
+    /**
+     * A streaming command that can also run on its own, with no input and its
+     * records printed as lines.
+     */
+    private record BoundStreamingCommand(StreamingCommand target)
+            implements Consumer<String[]>, StreamingCommand {
+
+        @Override
+        public void accept(String[] args) {
+            target.run(args, Collections.emptyIterator(), PipelineStages.CONSOLE);
+        }
+
+        @Override
+        public void run(String[] args, Iterator<String> input, RecordSink output) {
+            target.run(args, input, output);
+        }
+    }
+}
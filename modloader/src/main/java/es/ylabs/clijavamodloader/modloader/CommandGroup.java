@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
+import es.ylabs.clijavamodloader.commands.management.PipelineStages;
+import es.ylabs.clijavamodloader.streams.RecordSink;
+import es.ylabs.clijavamodloader.streams.StreamingCommand;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A command group of a loaded module.
+ * <p>
+ * The group is described by the command index or the scan cache, so its
+ * commands can be registered as stubs before its class is even loaded. The
+ * class is loaded, linked and instantiated once, the first time any of its
+ * commands runs, or right away when the module isn't loaded lazily. If that
+ * fails, it's tried again the next time one of its commands runs.
+ */
+final class CommandGroup {
+
+    private final String moduleName;
+    private final ClassLoader classLoader;
+    private final CommandIndex.Group descriptor;
+    // Constructors may take long, so virtual threads waiting on them must not
+    // pin their carrier threads, as they would with a synchronized block.
+    private final ReentrantLock activationLock;
+    private volatile Map<String, Consumer<String[]>> commands;
+    private volatile List<CachedCommand> cachedCommands;
+
+    CommandGroup(String moduleName, ClassLoader classLoader, CommandIndex.Group descriptor) {
+        this.moduleName = moduleName;
+        this.classLoader = classLoader;
+        this.descriptor = descriptor;
+        this.activationLock = new ReentrantLock();
+        this.cachedCommands = List.of();
+    }
+
+    String getClassName() {
+        return descriptor.className();
+    }
+
+    boolean isActive() {
+        return commands != null;
+    }
+
+    /**
+     * Drops the cached outputs of the commands of the group.
+     */
+    void invalidateCachedResults() {
+        cachedCommands.forEach(CachedCommand::invalidate);
+    }
+
+    /**
+     * Creates a stub for every command of the group. A stub activates the
+     * group the first time it runs, and then calls the actual command. Stubs
+     * can be piped whether or not the actual command is a streaming one.
+     *
+     * @return A map from the commands of the group to their stubs.
+     */
+    Map<String, Consumer<String[]>> createStubs() {
+        Map<String, Consumer<String[]>> stubs = new HashMap<>();
+
+        for (String command : descriptor.commands().keySet()) {
+            stubs.put(command, new CommandStub(this, command));
+        }
+
+        return stubs;
+    }
+
+    /**
+     * Activates the group, if it isn't active yet: its class is initialized,
+     * instantiated and its commands are bound to the instance.
+     *
+     * @return A map from the commands of the group to the bound commands.
+     * @throws Exception If the group can't be instantiated, or its commands
+     *      don't match the ones described for it.
+     */
+    Map<String, Consumer<String[]>> activate() throws Exception {
+        Map<String, Consumer<String[]>> activeCommands = commands;
+
+        if (activeCommands == null) {
+            activationLock.lock();
+
+            try {
+                activeCommands = commands;
+
+                if (activeCommands == null) {
+                    activeCommands = instantiate();
+                    commands = activeCommands;
+                }
+            } finally {
+                activationLock.unlock();
+            }
+        }
+
+        return activeCommands;
+    }
+
+    private Map<String, Consumer<String[]>> instantiate() throws Exception {
+        Class<?> groupClass = Class.forName(descriptor.className(), true, classLoader);
+
+        if (!groupClass.isAnnotationPresent(CliCommandGroup.class)) {
+            throw new Exception("Class " + descriptor.className() + " is not a command group");
+        }
+
+        Object groupInstance;
+
+        try {
+            groupInstance = groupClass.getDeclaredConstructor().newInstance();
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+
+            throw new Exception("Constructor of " + descriptor.className() + " failed: "
+                    + Objects.requireNonNullElse(cause.getMessage(), cause.getClass().getName()), cause);
+        }
+
+        Map<String, Consumer<String[]>> boundCommands = new HashMap<>();
+        List<CachedCommand> newCachedCommands = new ArrayList<>();
+
+        for (Method method : groupClass.getDeclaredMethods()) {
+            CliCommand cliCommand = method.getAnnotation(CliCommand.class);
+
+            if (cliCommand != null) {
+                Consumer<String[]> boundCommand = CommandBinder.bind(method, groupInstance);
+
+                if (cliCommand.cacheable() && boundCommand instanceof StreamingCommand) {
+                    throw new Exception("Streaming command " + cliCommand.command() + " can't be cacheable");
+                } else if (cliCommand.cacheable()) {
+                    CachedCommand cachedCommand = new CachedCommand(boundCommand,
+                            cliCommand.cacheTtlMillis(), cliCommand.cacheMaxEntries());
+                    newCachedCommands.add(cachedCommand);
+                    boundCommand = cachedCommand;
+                }
+
+                boundCommands.put(cliCommand.command(), boundCommand);
+            }
+        }
+
+        if (!boundCommands.keySet().equals(descriptor.commands().keySet())) {
+            throw new Exception("Commands of " + descriptor.className()
+                    + " don't match the ones in the module index");
+        }
+
+        cachedCommands = List.copyOf(newCachedCommands);
+
+        return Map.copyOf(boundCommands);
+    }
+
+    private record CommandStub(CommandGroup group, String command)
+            implements Consumer<String[]>, StreamingCommand {
+
+        @Override
+        public void accept(String[] args) {
+            getBoundCommand().accept(args);
+        }
+
+        @Override
+        public void run(String[] args, Iterator<String> input, RecordSink output) {
+            PipelineStages.run(getBoundCommand(), args, input, output);
+        }
+
+        private Consumer<String[]> getBoundCommand() {
+            try {
+                return group.activate().get(command);
+            } catch (Exception | LinkageError e) {
+                throw new IllegalStateException("Unable to activate command group "
+                        + group.getClassName() + " of module " + group.moduleName + ": "
+                        + Objects.requireNonNullElse(e.getMessage(), e.getClass().getName()), e);
+            }
+        }
+    }
+}
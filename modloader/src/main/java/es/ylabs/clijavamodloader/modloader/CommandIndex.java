@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import es.ylabs.clijavamodloader.processing.CommandIndexProcessor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Command index of a module, as written by {@link CommandIndexProcessor}.
+ *
+ * @param groups The command groups of the module.
+ */
+public record CommandIndex(List<Group> groups) {
+
+    /**
+     * A command group listed in the index.
+     *
+     * @param className The binary name of the group class.
+     * @param commands The commands of the group, mapped to their method names.
+     */
+    public record Group(String className, Map<String, String> commands) {
+    }
+
+    /**
+     * Reads the command index of a module.
+     *
+     * @param jar The module JAR.
+     *
+     * @return The command index, or an empty optional if the module has no index.
+     * @throws IOException If the index can't be read or is malformed.
+     */
+    public static Optional<CommandIndex> read(JarFile jar) throws IOException {
+        JarEntry entry = jar.getJarEntry(CommandIndexProcessor.INDEX_FILE);
+
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        List<Group> groups = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                jar.getInputStream(entry), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+
+            if (!CommandIndexProcessor.INDEX_HEADER.equals(line)) {
+                throw new IOException("Unsupported command index format");
+            }
+
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    groups.add(parseGroup(line));
+                }
+            }
+        }
+
+        return Optional.of(new CommandIndex(Collections.unmodifiableList(groups)));
+    }
+
+    private static Group parseGroup(String line) throws IOException {
+        String[] fields = line.split("\t");
+        Map<String, String> commands = new LinkedHashMap<>();
+
+        for (int i = 1; i < fields.length; i++) {
+            int separator = fields[i].indexOf('=');
+
+            if (separator <= 0 || separator == fields[i].length() - 1) {
+                throw new IOException("Malformed command index entry: " + fields[i]);
+            }
+
+            commands.put(fields[i].substring(0, separator), fields[i].substring(separator + 1));
+        }
+
+        return new Group(fields[0], Collections.unmodifiableMap(commands));
+    }
+}
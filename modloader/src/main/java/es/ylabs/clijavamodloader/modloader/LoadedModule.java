@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A loaded module: its class loader, its command groups and the commands it
+ * registered.
+ * <p>
+ * Every class of the module is defined by the same class loader, which lives
+ * as long as the module does and is closed once the module is unloaded or
+ * replaced and none of its commands is running.
+ */
+final class LoadedModule {
+
+    private final String name;
+    private final File file;
+    private final ModuleClassLoader classLoader;
+    private final boolean lazy;
+    private final ArrayList<CommandGroup> groups;
+    private final ArrayList<String> commands;
+    private int runningCommands;
+    private boolean retired;
+
+    /**
+     * Creates a module and its class loader.
+     *
+     * @param name The name of the module.
+     * @param generation A number telling apart the class loaders of successive
+     *                   loads of the module, which is added to the name of the
+     *                   class loader.
+     * @param file The JAR file of the module.
+     * @param parent The parent of the class loader of the module.
+     * @param lazy Whether the command groups are instantiated on first use.
+     *
+     * @throws MalformedURLException If the path of the JAR file is invalid.
+     */
+    LoadedModule(String name, int generation, File file, ClassLoader parent, boolean lazy)
+            throws MalformedURLException {
+        this.name = name;
+        this.file = file;
+        this.classLoader = new ModuleClassLoader(name + "#" + generation,
+                new URL[]{ file.toURI().toURL() }, parent);
+        this.lazy = lazy;
+        this.groups = new ArrayList<>();
+        this.commands = new ArrayList<>();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    ModuleClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * Tells whether the command groups of the module are only instantiated
+     * when one of their commands is first run.
+     *
+     * @return True if the module is loaded lazily.
+     */
+    boolean isLazy() {
+        return lazy;
+    }
+
+    List<CommandGroup> getGroups() {
+        return groups;
+    }
+
+    ArrayList<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Records that a command of the module was called. It counts as running
+     * until it finishes, including the time it waits for its bulkhead.
+     */
+    synchronized void commandStarted() {
+        runningCommands++;
+    }
+
+    /**
+     * Records that a command of the module finished, closing the module if it
+     * was the last one running after the module was retired.
+     */
+    void commandFinished() {
+        synchronized (this) {
+            if (--runningCommands > 0 || !retired) {
+                return;
+            }
+        }
+
+        close();
+    }
+
+    /**
+     * Closes the module once none of its commands is running. Until then, the
+     * commands that were already called when the module was unloaded or
+     * replaced can still load classes from its JAR file.
+     */
+    void closeWhenIdle() {
+        synchronized (this) {
+            retired = true;
+
+            if (runningCommands > 0) {
+                return;
+            }
+        }
+
+        close();
+    }
+
+    /**
+     * Closes the class loader of the module, releasing the JAR file, and drops
+     * the cached outputs of its commands, which must not outlive it.
+     */
+    void close() {
+        groups.forEach(CommandGroup::invalidateCachedResults);
+
+        try {
+            classLoader.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
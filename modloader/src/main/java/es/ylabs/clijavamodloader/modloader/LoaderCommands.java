@@ -27,8 +27,12 @@ package es.ylabs.clijavamodloader.modloader;
 import es.ylabs.clijavamodloader.annotations.CliCommand;
 import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
 import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+import es.ylabs.clijavamodloader.output.CliOutput;
 
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 
 @CliCommandGroup
@@ -37,6 +41,26 @@ public class LoaderCommands {
     private final String COMMAND_LISTMODS = "lsmod";
     private final String COMMAND_LOADMOD = "modprobe";
     private final String COMMAND_UNLOADMOD = "rmmod";
+    private final String COMMAND_MODCACHE = "modcache";
+    private final String COMMAND_MODWATCH = "modwatch";
+    private final String COMMAND_MODLIMIT = "modlimit";
+
+    private final String OPTION_VERIFY = "-v";
+    private final String OPTION_LAZY = "-l";
+    private final String ACTION_CLEAR = "clear";
+    private final String ACTION_INVALIDATE = "invalidate";
+    private final String ACTION_CANCEL = "cancel";
+    private final String VALUE_ON = "on";
+    private final String VALUE_OFF = "off";
+    private final String RECORD_MODULE = "module";
+    private final String RECORD_LEAKED_MODULE = "leaked-module";
+    private final String RECORD_COLLECTED_MODULES = "collected-modules";
+    private final String RECORD_MODULE_COLLECTION = "module-collection";
+    private final String STATUS_LOADED = "loaded";
+    private final String STATUS_UNLOADED = "unloaded";
+    private final String STATUS_NOT_FOUND = "not-found";
+    private final String STATUS_ERROR = "error";
+    private final long VERIFY_TIMEOUT_MILLIS = 5000;
 
     private final LoaderCore loaderCore;
 
@@ -49,32 +73,47 @@ public class LoaderCommands {
         if (args.length == 1) {
             List<String> loadedModules = loaderCore.getLoadedModules();
 
-            if (loadedModules.isEmpty()) {
+            if (CliOutput.isStructured()) {
+                loadedModules.forEach(module -> CliOutput.beginRecord(RECORD_MODULE)
+                        .field("module", module)
+                        .end());
+            } else if (loadedModules.isEmpty()) {
                 ANSIHelpers.printRedAndBold("No modules loaded");
             } else {
                 loadedModules.forEach(ANSIHelpers::printGreenAndBold);
             }
+        } else if (args.length == 2 && args[1].equals(OPTION_VERIFY)) {
+            printModuleDetails();
         } else {
             ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
         }
     }
 
     @CliCommand(command = COMMAND_LOADMOD)
     public void modprobe(String[] args) {
-        if (args.length == 2) {
+        boolean lazy = args.length > 1 && args[1].equals(OPTION_LAZY);
+        List<String> modules = Arrays.asList(args).subList(lazy ? 2 : 1, args.length);
+
+        if (modules.size() > 1 || (modules.size() == 1 && isGlob(modules.get(0)))) {
+            try {
+                loaderCore.loadModules(modules, lazy).forEach(this::reportLoaded);
+            } catch (Error | Exception e) {
+                reportLoadError("Error loading modules ", modules, e);
+            }
+        } else if (modules.size() == 1) {
             try {
-                if (loaderCore.loadModule(args[1])) {
-                    ANSIHelpers.printGreenAndBold("Module " + args[1] + " loaded");
+                if (loaderCore.loadModule(modules.get(0), lazy)) {
+                    reportLoaded(modules.get(0));
                 } else {
-                    ANSIHelpers.printRedAndBold("Module not found");
+                    reportNotFound(COMMAND_LOADMOD, modules.get(0));
                 }
             } catch (Error | Exception e) {
-                ANSIHelpers.printRedAndBold("Error loading module " + args[1]);
-                ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
-                        "UNKNOWN ERROR"));
+                reportLoadError("Error loading module ", modules, e);
             }
         } else {
             ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
         }
     }
 
@@ -82,12 +121,302 @@ public class LoaderCommands {
     public void rmmod(String[] args) {
         if (args.length == 2) {
             if (loaderCore.unloadModule(args[1])) {
-                ANSIHelpers.printYellowAndBold("Module " + args[1] + " unloaded");
+                reportUnloaded(args[1]);
+            } else {
+                reportNotFound(COMMAND_UNLOADMOD, args[1]);
+            }
+        } else if (args.length == 3 && args[1].equals(OPTION_VERIFY)) {
+            if (loaderCore.unloadModule(args[2])) {
+                reportUnloaded(args[2]);
+                verifyModuleCollected(args[2]);
+            } else {
+                reportNotFound(COMMAND_UNLOADMOD, args[2]);
+            }
+        } else {
+            ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
+    }
+
+    @CliCommand(command = COMMAND_MODCACHE)
+    public void modcache(String[] args) {
+        ModuleScanCache moduleScanCache = loaderCore.getModuleScanCache();
+
+        if (args.length == 1) {
+            List<ModuleScanCache.Entry> entries = moduleScanCache.getEntries();
+
+            if (entries.isEmpty()) {
+                ANSIHelpers.printRedAndBold("Module scan cache is empty");
             } else {
-                ANSIHelpers.printRedAndBold("Module not found");
+                entries.forEach(entry -> ANSIHelpers.printGreenAndBold(entry.path() + " ("
+                        + entry.size() + " bytes, "
+                        + entry.groups().size() + " groups, "
+                        + entry.groups().stream().mapToInt(group -> group.commands().size()).sum()
+                        + " commands, sha256 "
+                        + HexFormat.of().formatHex(entry.digest(), 0, 8) + ")"));
+            }
+        } else if (args.length == 2 && args[1].equals(ACTION_CLEAR)) {
+            try {
+                moduleScanCache.clear();
+                ANSIHelpers.printYellowAndBold("Module scan cache cleared");
+            } catch (Exception e) {
+                ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                        "UNKNOWN ERROR"));
+                CliOutput.reportFailure();
+            }
+        } else if (args.length == 3 && args[1].equals(ACTION_INVALIDATE)) {
+            if (moduleScanCache.invalidate(args[2])) {
+                ANSIHelpers.printYellowAndBold("Module " + args[2] + " removed from the scan cache");
+            } else {
+                ANSIHelpers.printRedAndBold("Module not found in the scan cache");
+                CliOutput.reportFailure();
+            }
+        } else {
+            ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
+    }
+
+    @CliCommand(command = COMMAND_MODWATCH)
+    public void modwatch(String[] args) {
+        if (args.length == 1) {
+            if (loaderCore.isWatching()) {
+                ANSIHelpers.printGreenAndBold("Watching the plugins home for module changes");
+            } else {
+                ANSIHelpers.printYellowAndBold("Not watching the plugins home");
+            }
+        } else if (args.length == 2 && args[1].equals(VALUE_ON)) {
+            try {
+                if (loaderCore.startWatching()) {
+                    ANSIHelpers.printGreenAndBold("Watching the plugins home for module changes");
+                } else {
+                    ANSIHelpers.printRedAndBold("Already watching the plugins home");
+                    CliOutput.reportFailure();
+                }
+            } catch (Exception e) {
+                ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                        "UNKNOWN ERROR"));
+                CliOutput.reportFailure();
+            }
+        } else if (args.length == 2 && args[1].equals(VALUE_OFF)) {
+            if (loaderCore.stopWatching()) {
+                ANSIHelpers.printYellowAndBold("Stopped watching the plugins home");
+            } else {
+                ANSIHelpers.printRedAndBold("Not watching the plugins home");
+                CliOutput.reportFailure();
+            }
+        } else {
+            ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
+    }
+
+    @CliCommand(command = COMMAND_MODLIMIT)
+    public void modlimit(String[] args) {
+        if (args.length == 1) {
+            List<LoaderCore.BulkheadStats> bulkheads = loaderCore.getBulkheadStats();
+
+            if (bulkheads.isEmpty()) {
+                ANSIHelpers.printRedAndBold("No modules loaded");
+            }
+
+            bulkheads.forEach(bulkhead -> ANSIHelpers.printGreenAndBold(String.format(Locale.ROOT,
+                    "%-24s %4d concurrent  %6d queued  timeout %s",
+                    bulkhead.module(), bulkhead.maxConcurrent(), bulkhead.maxQueued(),
+                    bulkhead.timeoutMillis() > 0 ? bulkhead.timeoutMillis() + " ms" : "none")));
+        } else if (args.length == 3 && args[1].equals(ACTION_CANCEL)) {
+            try {
+                ANSIHelpers.printYellowAndBold(loaderCore.cancelRunningCommands(args[2])
+                        + " commands of module " + args[2] + " cancelled");
+            } catch (Exception e) {
+                ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                        "UNKNOWN ERROR"));
+                CliOutput.reportFailure();
+            }
+        } else if (args.length == 4 || args.length == 5) {
+            try {
+                loaderCore.setBulkheadLimits(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                        args.length == 5 ? Long.parseLong(args[4]) : 0);
+                ANSIHelpers.printGreenAndBold("Limits of module " + args[1] + " changed");
+            } catch (NumberFormatException e) {
+                ANSIHelpers.printRedAndBold("Invalid arguments");
+                CliOutput.reportFailure();
+            } catch (Exception e) {
+                ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                        "UNKNOWN ERROR"));
+                CliOutput.reportFailure();
             }
         } else {
             ANSIHelpers.printRedAndBold("Invalid arguments");
+            CliOutput.reportFailure();
+        }
+    }
+
+    private boolean isGlob(String module) {
+        return module.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    private void printModuleDetails() {
+        List<LoaderCore.ModuleDetails> modules = loaderCore.getModuleDetails();
+        boolean structured = CliOutput.isStructured();
+
+        if (modules.isEmpty() && !structured) {
+            ANSIHelpers.printRedAndBold("No modules loaded");
+        }
+
+        for (LoaderCore.ModuleDetails module : modules) {
+            if (structured) {
+                CliOutput.beginRecord(RECORD_MODULE)
+                        .field("module", module.module())
+                        .field("commands", module.commands())
+                        .field("lazy", module.lazy())
+                        .field("activeGroups", module.activeGroups())
+                        .field("groups", module.groups())
+                        .field("classes", module.classes())
+                        .field("metaspaceBytes", module.metaspaceBytes())
+                        .end();
+            } else {
+                ANSIHelpers.printGreenAndBold(String.format(Locale.ROOT,
+                        "%-24s %4d commands  %5d classes  metaspace %10s  %s",
+                        module.module(), module.commands(), module.classes(),
+                        formatBytes(module.metaspaceBytes()),
+                        (module.lazy() ? "lazy, " : "") + module.activeGroups() + "/" + module.groups()
+                                + " groups active"));
+            }
+        }
+
+        try {
+            List<LoaderCore.LeakedModule> leakedModules = loaderCore.findLeakedModules();
+
+            if (!leakedModules.isEmpty() && !structured) {
+                ANSIHelpers.printRedAndBold("Unloaded modules still reachable after a garbage collection:");
+            }
+
+            leakedModules.forEach(this::printLeakedModule);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (structured) {
+            CliOutput.beginRecord(RECORD_COLLECTED_MODULES)
+                    .field("count", loaderCore.getCollectedModuleCount())
+                    .end();
+        } else {
+            ANSIHelpers.printYellowAndBold(loaderCore.getCollectedModuleCount()
+                    + " class loaders of unloaded modules collected");
+        }
+    }
+
+    private void printLeakedModule(LoaderCore.LeakedModule leakedModule) {
+        if (CliOutput.isStructured()) {
+            CliOutput.beginRecord(RECORD_LEAKED_MODULE)
+                    .field("module", leakedModule.module())
+                    .field("classLoader", leakedModule.classLoader())
+                    .field("unloadedMillisAgo", leakedModule.unloadedNanosAgo() / 1_000_000)
+                    .field("metaspaceBytes", leakedModule.metaspaceBytes())
+                    .field("retainers", leakedModule.retainers())
+                    .end();
+            return;
+        }
+
+        ANSIHelpers.printRedAndBold(String.format(Locale.ROOT,
+                "%-24s unloaded %.1f s ago  metaspace %10s  class loader %s",
+                leakedModule.module(), leakedModule.unloadedNanosAgo() / 1_000_000_000.0,
+                formatBytes(leakedModule.metaspaceBytes()), leakedModule.classLoader()));
+
+        if (leakedModule.retainers().isEmpty()) {
+            ANSIHelpers.printRedAndBold("  No thread retains it, a heap dump is needed to find out what does");
+        } else {
+            leakedModule.retainers().forEach(retainer -> ANSIHelpers.printRedAndBold("  " + retainer));
+        }
+    }
+
+    private String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "unknown";
+        } else if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        } else {
+            return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
+
+    private void reportLoaded(String module) {
+        if (CliOutput.isStructured()) {
+            reportModule(COMMAND_LOADMOD, module, STATUS_LOADED, null);
+        } else {
+            ANSIHelpers.printGreenAndBold("Module " + module + " loaded");
+        }
+    }
+
+    private void reportUnloaded(String module) {
+        if (CliOutput.isStructured()) {
+            reportModule(COMMAND_UNLOADMOD, module, STATUS_UNLOADED, null);
+        } else {
+            ANSIHelpers.printYellowAndBold("Module " + module + " unloaded");
+        }
+    }
+
+    private void reportNotFound(String command, String module) {
+        CliOutput.reportFailure();
+
+        if (CliOutput.isStructured()) {
+            reportModule(command, module, STATUS_NOT_FOUND, "Module not found");
+        } else {
+            ANSIHelpers.printRedAndBold("Module not found");
+        }
+    }
+
+    private void reportLoadError(String header, List<String> modules, Throwable e) {
+        String message = Objects.requireNonNullElse(e.getMessage(), "UNKNOWN ERROR");
+
+        CliOutput.reportFailure();
+
+        if (CliOutput.isStructured()) {
+            // Modules are loaded all or none, so every one of them failed.
+            modules.forEach(module -> reportModule(COMMAND_LOADMOD, module, STATUS_ERROR, message));
+        } else {
+            ANSIHelpers.printRedAndBold(header + String.join(" ", modules));
+            ANSIHelpers.printRedAndBold(message);
+        }
+    }
+
+    private void reportModule(String command, String module, String status, String error) {
+        CliOutput.beginRecord(command)
+                .field("module", module)
+                .field("status", status)
+                .field("error", error)
+                .end();
+    }
+
+    private void verifyModuleCollected(String module) {
+        try {
+            boolean collected = loaderCore.awaitModuleCollected(module, VERIFY_TIMEOUT_MILLIS);
+
+            if (CliOutput.isStructured()) {
+                CliOutput.beginRecord(RECORD_MODULE_COLLECTION)
+                        .field("module", module)
+                        .field("collected", collected)
+                        .end();
+            } else if (collected) {
+                ANSIHelpers.printGreenAndBold("Class loader of module " + module
+                        + " was garbage collected");
+            } else {
+                ANSIHelpers.printRedAndBold("Class loader of module " + module
+                        + " is still reachable");
+            }
+
+            if (!collected) {
+                loaderCore.findLeakedModules().stream()
+                        .filter(leakedModule -> leakedModule.module().equals(module))
+                        .forEach(this::printLeakedModule);
+            }
+        } catch (Exception e) {
+            ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                    "UNKNOWN ERROR"));
+            CliOutput.reportFailure();
         }
     }
 }
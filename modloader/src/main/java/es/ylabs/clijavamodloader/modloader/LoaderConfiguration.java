@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.CodeSource;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Configuration of the loader, read from {@code application.yml}.
+ * <p>
+ * A configuration file in the same directory as the application JAR takes
+ * precedence over the one bundled in it. If neither can be read, the defaults
+ * are used.
+ *
+ * @param pluginsHomePath The directory modules are loaded from by default.
+ * @param defaultLimits The bulkhead limits of modules without their own.
+ * @param moduleLimits The bulkhead limits of specific modules.
+ */
+record LoaderConfiguration(String pluginsHomePath, ModuleBulkhead.Limits defaultLimits,
+                           Map<String, ModuleBulkhead.Limits> moduleLimits) {
+
+    private static final String CONFIG_FILE = "application.yml";
+    private static final String KEY_PLUGINS_HOME = "pluginshome";
+    private static final String KEY_BULKHEADS = "bulkheads";
+    private static final String KEY_DEFAULT_BULKHEAD = "default";
+    private static final String KEY_MAX_CONCURRENT = "maxconcurrent";
+    private static final String KEY_MAX_QUEUED = "maxqueued";
+    private static final String KEY_TIMEOUT_MILLIS = "timeoutmillis";
+    private static final String DEFAULT_PLUGINS_HOME = "/tmp";
+
+    /**
+     * Returns the bulkhead limits of a module.
+     *
+     * @param module The name of the module.
+     *
+     * @return Its own limits if it has them, or the default ones.
+     */
+    ModuleBulkhead.Limits getLimits(String module) {
+        return moduleLimits.getOrDefault(module, defaultLimits);
+    }
+
+    /**
+     * Reads the configuration.
+     *
+     * @return The configuration.
+     */
+    static LoaderConfiguration load() {
+        Map<String, Object> yamlMap = null;
+
+        try (InputStream inputStream = openConfigFile()) {
+            if (inputStream != null) {
+                yamlMap = new Yaml().load(inputStream);
+            }
+        } catch (Exception ignored) {
+        }
+
+        Object pluginsHomePath = yamlMap != null ? yamlMap.get(KEY_PLUGINS_HOME) : null;
+        Object bulkheads = yamlMap != null ? yamlMap.get(KEY_BULKHEADS) : null;
+        ModuleBulkhead.Limits defaultLimits = ModuleBulkhead.Limits.DEFAULT;
+        Map<String, ModuleBulkhead.Limits> moduleLimits = new HashMap<>();
+
+        // Invalid limits are ignored, like the rest of an invalid configuration.
+        if (bulkheads instanceof Map<?, ?> bulkheadMap) {
+            defaultLimits = readLimits(bulkheadMap.get(KEY_DEFAULT_BULKHEAD), defaultLimits);
+
+            for (Map.Entry<?, ?> entry : bulkheadMap.entrySet()) {
+                if (entry.getKey() instanceof String module && !module.equals(KEY_DEFAULT_BULKHEAD)) {
+                    moduleLimits.put(module, readLimits(entry.getValue(), defaultLimits));
+                }
+            }
+        }
+
+        return new LoaderConfiguration(pluginsHomePath instanceof String path
+                ? path
+                : DEFAULT_PLUGINS_HOME, defaultLimits, Map.copyOf(moduleLimits));
+    }
+
+    private static ModuleBulkhead.Limits readLimits(Object value, ModuleBulkhead.Limits defaults) {
+        if (!(value instanceof Map<?, ?> limits)) {
+            return defaults;
+        }
+
+        try {
+            return new ModuleBulkhead.Limits(
+                    limits.get(KEY_MAX_CONCURRENT) instanceof Number number
+                            ? number.intValue() : defaults.maxConcurrent(),
+                    limits.get(KEY_MAX_QUEUED) instanceof Number number
+                            ? number.intValue() : defaults.maxQueued(),
+                    limits.get(KEY_TIMEOUT_MILLIS) instanceof Number number
+                            ? number.longValue() : defaults.timeoutMillis());
+        } catch (IllegalArgumentException e) {
+            return defaults;
+        }
+    }
+
+    private static InputStream openConfigFile() throws IOException {
+        // Get the path of the current JAR/Class file.
+        CodeSource codeSource = LoaderConfiguration.class.getProtectionDomain().getCodeSource();
+
+        if (codeSource != null) {
+            File jarFile = new File(codeSource.getLocation().getPath());
+            File configFile = new File(jarFile.getParentFile(), CONFIG_FILE);
+
+            if (configFile.exists()) {
+                return new FileInputStream(configFile);
+            }
+        }
+
+        return LoaderConfiguration.class.getClassLoader().getResourceAsStream(CONFIG_FILE);
+    }
+}
@@ -27,81 +27,106 @@ package es.ylabs.clijavamodloader.modloader;
 import es.ylabs.clijavamodloader.annotations.CliCommand;
 import es.ylabs.clijavamodloader.annotations.CliCommandGroup;
 import es.ylabs.clijavamodloader.commands.management.CommandCollection;
-import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+import es.ylabs.clijavamodloader.commands.management.LatencyHistogram;
+import es.ylabs.clijavamodloader.helpers.OutputControl;
+import es.ylabs.clijavamodloader.helpers.StartupTimer;
 
 import java.io.File;
-import java.io.InputStream;
+import java.io.IOException;
 import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.security.CodeSource;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-
-import org.yaml.snakeyaml.Yaml;
+import java.util.stream.Stream;
 
 public enum LoaderCore {
     INSTANCE;
 
+    private static final int PARALLEL_SCAN_THRESHOLD = 512;
+    private static final long LEAK_CHECK_MILLIS = 200;
+
+    /**
+     * Details of a loaded module.
+     *
+     * @param module The name of the module.
+     * @param commands The number of commands it registered.
+     * @param lazy Whether its command groups are instantiated on first use.
+     * @param activeGroups The number of its command groups already instantiated.
+     * @param groups The number of its command groups.
+     * @param classes The number of classes defined by its class loader.
+     * @param metaspaceBytes The approximate metaspace used by its classes, or
+     *                       -1 if it can't be read.
+     */
+    public record ModuleDetails(String module, int commands, boolean lazy, int activeGroups, int groups,
+                                int classes, long metaspaceBytes) {
+    }
+
+    /**
+     * An unloaded module whose class loader is still reachable.
+     *
+     * @param module The name of the module.
+     * @param classLoader The name of its class loader.
+     * @param unloadedNanosAgo How long ago the module was unloaded.
+     * @param metaspaceBytes The approximate metaspace still used by its
+     *                       classes, or -1 if it can't be read.
+     * @param retainers What was found keeping the class loader alive.
+     */
+    public record LeakedModule(String module, String classLoader, long unloadedNanosAgo, long metaspaceBytes,
+                               List<String> retainers) {
+    }
+
+    /**
+     * Bulkhead limits and metrics of a loaded module.
+     *
+     * @param module The name of the module.
+     * @param maxConcurrent How many of its commands may run at once.
+     * @param maxQueued How many of its commands may wait for a place to run.
+     * @param timeoutMillis How long its commands may take, or 0 for no limit.
+     * @param active How many of its commands are running.
+     * @param queued How many of its commands are waiting.
+     * @param completed How many of its commands finished within their time.
+     * @param rejected How many of its commands were rejected with the queue full.
+     * @param timedOut How many of its commands ran out of time.
+     * @param cancelled How many of its commands were cancelled.
+     * @param waitTimes How long its commands waited for a place to run.
+     */
+    public record BulkheadStats(String module, int maxConcurrent, int maxQueued, long timeoutMillis,
+                                int active, int queued, long completed, long rejected, long timedOut,
+                                long cancelled, LatencyHistogram waitTimes) {
+    }
+
     private final CommandCollection commandCollection;
-    private final Map<String, ArrayList<String>> loadedModulesWithCommands;
-    private final String pluginsHomePath;
+    private final Map<String, LoadedModule> loadedModulesWithCommands;
+    private final Map<String, ModuleBulkhead> bulkheads;
+    private final ModuleLeakTracker moduleLeakTracker;
+    private final AtomicInteger loaderGeneration;
+    private final Object configurationLock;
+    private volatile LoaderConfiguration configuration;
+    private volatile ModuleScanCache moduleScanCache;
+    private PluginWatcher pluginWatcher;
 
     LoaderCore() {
-        String DEFAULT_PLUGINS_HOME = "/tmp";
-        String YAML_CONFIG_FILE = "application.yml";
+        // The output hooks are taken before any module can be loaded, so no
+        // module can take them first.
+        OutputControl.get();
 
         commandCollection = CommandCollection.INSTANCE.getInstance();
-        loadedModulesWithCommands = new HashMap<>();
-
-        // Get the path of the current JAR/Class file.
-        CodeSource codeSource = LoaderCore.class.getProtectionDomain().getCodeSource();
-        File jarFile = new File(codeSource.getLocation().getPath());
-        String jarDir = jarFile.getParentFile().getPath();
-
-        // The configuration file is expected to be in the same directory as the
-        // JAR file.
-        File configFile = new File(jarDir, YAML_CONFIG_FILE);
-
-        // TODO: this code may be optimized
-        if (configFile.exists()) {
-            Yaml yaml = new Yaml();
-            Map<String, Object> yamlMap = null;
-
-            try (InputStream inputStream = configFile.toURI().toURL().openStream()) {
-                yamlMap = yaml.load(inputStream);
-            } catch (Exception ignored) {
-            } finally {
-                if (yamlMap != null) {
-                    pluginsHomePath = (String) yamlMap.get("pluginshome");
-                } else {
-                    pluginsHomePath = DEFAULT_PLUGINS_HOME;
-                }
-            }
-        } else {
-            Yaml yaml = new Yaml();
-            Map<String, Object> yamlMap = null;
-
-            try (InputStream inputStream = getClass().getClassLoader()
-                    .getResourceAsStream(YAML_CONFIG_FILE)) {
-                yamlMap = yaml.load(inputStream);
-            } catch (Exception ignored) {
-            } finally {
-                if (yamlMap != null) {
-                    pluginsHomePath = (String) yamlMap.get("pluginshome");
-                } else {
-                    pluginsHomePath = DEFAULT_PLUGINS_HOME;
-                }
-            }
-        }
-
-        File directory = new File(pluginsHomePath);
-
-        if (!directory.exists()) {
-            throw new RuntimeException("Plugins home directory does not exist");
-        }
+        loadedModulesWithCommands = new ConcurrentHashMap<>();
+        bulkheads = new ConcurrentHashMap<>();
+        moduleLeakTracker = new ModuleLeakTracker();
+        loaderGeneration = new AtomicInteger();
+        configurationLock = new Object();
     }
 
     public LoaderCore getInstance() {
@@ -117,6 +142,20 @@ public enum LoaderCore {
         return loadedModulesWithCommands.keySet().stream().sorted().toList();
     }
 
+    /**
+     * Takes the loaded modules and the commands each of them registered.
+     *
+     * @return A map from the loaded modules to their commands.
+     */
+    public Map<String, List<String>> getLoadedModulesWithCommands() {
+        Map<String, List<String>> toret = new HashMap<>();
+
+        loadedModulesWithCommands.forEach((module, loadedModule) ->
+                toret.put(module, List.copyOf(loadedModule.getCommands())));
+
+        return toret;
+    }
+
     /**
      * Loads a module.
      *
@@ -127,12 +166,27 @@ public enum LoaderCore {
      *      loading the module.
      */
     public boolean loadModule(String module) throws Error, Exception {
+        return loadModule(module, false);
+    }
+
+    /**
+     * Loads a module, optionally deferring the instantiation of its command
+     * groups until one of their commands is first run.
+     *
+     * @param module The module to load (a JAR file).
+     * @param lazy Whether the command groups are instantiated on first use.
+     *
+     * @return True if the module was loaded, false if the module was not found.
+     * @throws Exception If the module is already loaded or an error occurs while
+     *      loading the module.
+     */
+    public boolean loadModule(String module, boolean lazy) throws Error, Exception {
         if (module.contains("/")) {
             String base = module.substring(0, module.lastIndexOf('/'));
             String file = module.substring(module.lastIndexOf('/') + 1);
-            return loadModule(base, file);
+            return loadModule(base, file, lazy);
         } else {
-            return loadModule(pluginsHomePath, module);
+            return loadModule(getPluginsHomePath(), module, lazy);
         }
     }
 
@@ -147,56 +201,344 @@ public enum LoaderCore {
      *      loading the module.
      */
     public boolean loadModule(String pluginPath, String module) throws Error, Exception {
+        return loadModule(pluginPath, module, false);
+    }
+
+    /**
+     * Loads a module, optionally deferring the instantiation of its command
+     * groups until one of their commands is first run.
+     *
+     * @param pluginPath The path to the directory where the module is located.
+     * @param module The module to load (a JAR file).
+     * @param lazy Whether the command groups are instantiated on first use.
+     *
+     * @return True if the module was loaded, false if the module was not found.
+     * @throws Exception If the module is already loaded or an error occurs while
+     *      loading the module.
+     */
+    public synchronized boolean loadModule(String pluginPath, String module, boolean lazy)
+            throws Error, Exception {
         if (mapContainsKey(loadedModulesWithCommands, module)) {
             throw new Exception("Module already loaded");
-        } else {
-            loadedModulesWithCommands.put(module, new ArrayList<>());
         }
 
         File file = new File(pluginPath, module);
 
         if (file.exists()) {
-            try (JarFile jar = new JarFile(file)) {
-                Enumeration<JarEntry> entries = jar.entries();
-
-                while (entries.hasMoreElements()) {
-                    JarEntry entry = entries.nextElement();
-
-                    if (entry.getName().endsWith(".class")) {
-                        String className = entry.getName()
-                                .replace("/", ".")
-                                .replace(".class", "");
-
-                        try (URLClassLoader classLoader = new URLClassLoader(
-                                new URL[]{ file.toURI().toURL() },
-                                this.getClass().getClassLoader())) {
-                            Class<?> groupClass = classLoader.loadClass(className);
-
-                            if (groupClass.isAnnotationPresent(CliCommandGroup.class)) {
-                                Object groupInstance = groupClass.getDeclaredConstructor().newInstance();
-                                Map<String, Consumer<String[]>> newCommands =
-                                        getCommandsFromGroup(groupClass, groupInstance);
-                                commandCollection.addCommands(newCommands);
-                                loadedModulesWithCommands.get(module).addAll(newCommands.keySet());
-                            }
-                        } catch (Error | Exception e) {
-                            throw e;
-                        }
+            loadModuleFiles(List.of(file), lazy);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Loads several modules at once. The modules are scanned in parallel and
+     * then all their commands are registered together: if any module can't be
+     * loaded, none of them is.
+     *
+     * @param modules The modules to load (JAR files). They may be glob patterns,
+     *                such as {@code *.jar}, matched against the directory of
+     *                the module.
+     *
+     * @return The names of the loaded modules.
+     * @throws Exception If a module isn't found, is already loaded or an error
+     *      occurs while loading it.
+     */
+    public List<String> loadModules(List<String> modules) throws Error, Exception {
+        return loadModules(modules, false);
+    }
+
+    /**
+     * Loads several modules at once, optionally deferring the instantiation of
+     * their command groups until one of their commands is first run.
+     *
+     * @param modules The modules to load (JAR files). They may be glob patterns.
+     * @param lazy Whether the command groups are instantiated on first use.
+     *
+     * @return The names of the loaded modules.
+     * @throws Exception If a module isn't found, is already loaded or an error
+     *      occurs while loading it.
+     */
+    public synchronized List<String> loadModules(List<String> modules, boolean lazy)
+            throws Error, Exception {
+        List<File> files = new ArrayList<>();
+
+        for (String module : modules) {
+            files.addAll(resolveModuleFiles(module));
+        }
+
+        loadModuleFiles(files, lazy);
+
+        return files.stream().map(File::getName).toList();
+    }
+
+    private List<File> resolveModuleFiles(String module) throws Exception {
+        String directory = module.contains("/")
+                ? module.substring(0, module.lastIndexOf('/'))
+                : getPluginsHomePath();
+        String fileName = module.substring(module.lastIndexOf('/') + 1);
+
+        if (!isGlob(fileName)) {
+            File file = new File(directory, fileName);
+
+            if (!file.exists()) {
+                throw new Exception("Module " + fileName + " not found");
+            }
+
+            return List.of(file);
+        }
+
+        List<File> files = new ArrayList<>();
+
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(Path.of(directory), fileName)) {
+            for (Path path : paths) {
+                if (Files.isRegularFile(path)) {
+                    files.add(path.toFile());
+                }
+            }
+        }
+
+        if (files.isEmpty()) {
+            throw new Exception("No modules match " + fileName);
+        }
+
+        files.sort(Comparator.comparing(File::getName));
+
+        return files;
+    }
+
+    private void loadModuleFiles(List<File> files, boolean lazy) throws Error, Exception {
+        Set<String> moduleNames = new HashSet<>();
+
+        for (File file : files) {
+            if (!moduleNames.add(file.getName())) {
+                throw new Exception("Module " + file.getName() + " requested more than once");
+            } else if (mapContainsKey(loadedModulesWithCommands, file.getName())) {
+                throw new Exception("Module " + file.getName() + " already loaded");
+            }
+        }
+
+        List<Future<PreparedModule>> tasks = new ArrayList<>();
+
+        for (File file : files) {
+            tasks.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return prepareModule(file, lazy);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, ForkJoinPool.commonPool()));
+        }
+
+        List<PreparedModule> preparedModules = new ArrayList<>();
+        Throwable failure = null;
+        String failedModule = null;
+
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    preparedModules.add(tasks.get(i).get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                        failedModule = files.get(i).getName();
                     }
                 }
+            }
+        } finally {
+            getModuleScanCache().save();
+        }
+
+        try {
+            if (failure != null) {
+                throw files.size() == 1
+                        ? failure
+                        : new Exception(failedModule + ": " + Objects.requireNonNullElse(
+                                failure.getMessage(), failure.getClass().getName()), failure);
+            }
+
+            Map<String, Consumer<String[]>> batchCommands = new HashMap<>();
+            Map<String, String> commandModules = new HashMap<>();
 
-                if (!loadedModulesWithCommands.get(module).isEmpty()) {
-                    return true;
-                } else {
-                    throw new Exception("No commands found in module");
+            for (PreparedModule preparedModule : preparedModules) {
+                for (String command : preparedModule.commands().keySet()) {
+                    String otherModule = commandModules.putIfAbsent(command,
+                            preparedModule.module().getName());
+
+                    if (otherModule != null) {
+                        throw new Exception("Duplicate command " + command + " in modules "
+                                + otherModule + " and " + preparedModule.module().getName());
+                    }
                 }
-            } catch (Error | Exception e) {
-                unloadModule(module);
-                throw e;
+
+                batchCommands.putAll(preparedModule.commands());
             }
-        } else {
+
+            // All the commands of the modules are registered at once, so a
+            // command can never run while its module is half loaded.
+            commandCollection.addCommands(batchCommands);
+        } catch (Error | Exception e) {
+            preparedModules.forEach(preparedModule -> preparedModule.module().close());
+            throw e;
+        } catch (Throwable t) {
+            preparedModules.forEach(preparedModule -> preparedModule.module().close());
+            throw new Exception(t);
+        }
+
+        for (PreparedModule preparedModule : preparedModules) {
+            preparedModule.module().getCommands().addAll(preparedModule.commands().keySet());
+            bulkheads.put(preparedModule.module().getName(), preparedModule.bulkhead());
+            loadedModulesWithCommands.put(preparedModule.module().getName(), preparedModule.module());
+        }
+    }
+
+    private PreparedModule prepareModule(File file, boolean lazy) throws Exception {
+        LoadedModule loadedModule = new LoadedModule(file.getName(),
+                loaderGeneration.incrementAndGet(), file,
+                this.getClass().getClassLoader(), lazy);
+
+        try {
+            // A cached scan of an unchanged JAR already tells us which classes
+            // are command groups, so the JAR isn't even opened.
+            Optional<List<CommandIndex.Group>> cachedGroups = getModuleScanCache().get(file);
+            List<CommandIndex.Group> groups;
+
+            if (cachedGroups.isPresent()) {
+                groups = cachedGroups.get();
+            } else {
+                groups = scanGroups(loadedModule.getClassLoader(), file);
+                getModuleScanCache().put(file, groups);
+            }
+
+            Map<String, Consumer<String[]>> moduleCommands = new HashMap<>();
+
+            for (CommandIndex.Group group : groups) {
+                CommandGroup commandGroup = new CommandGroup(loadedModule.getName(),
+                        loadedModule.getClassLoader(), group);
+                Map<String, Consumer<String[]>> newCommands = lazy
+                        ? commandGroup.createStubs()
+                        : commandGroup.activate();
+
+                for (Map.Entry<String, Consumer<String[]>> newCommand : newCommands.entrySet()) {
+                    if (moduleCommands.putIfAbsent(newCommand.getKey(), newCommand.getValue()) != null) {
+                        throw new Exception("Duplicate command " + newCommand.getKey()
+                                + " in module");
+                    }
+                }
+
+                loadedModule.getGroups().add(commandGroup);
+            }
+
+            if (moduleCommands.isEmpty()) {
+                throw new Exception("No commands found in module");
+            }
+
+            // The bulkhead outlives reloads, so its limits and metrics do too.
+            // A new one is only kept once the module is registered.
+            ModuleBulkhead bulkhead = Objects.requireNonNullElseGet(bulkheads.get(loadedModule.getName()),
+                    () -> new ModuleBulkhead(loadedModule.getName(),
+                            getConfiguration().getLimits(loadedModule.getName())));
+            moduleCommands.replaceAll((command, moduleCommand) -> bulkhead.wrap(loadedModule, moduleCommand));
+
+            return new PreparedModule(loadedModule, moduleCommands, bulkhead);
+        } catch (Error | Exception e) {
+            loadedModule.close();
+            getModuleScanCache().invalidate(file.getName());
+            throw e;
+        }
+    }
+
+    /**
+     * Reloads a loaded module from its JAR file. The new version is prepared
+     * while the old one keeps working, and then the commands of the old
+     * version are replaced with the new ones all at once. The old version is
+     * closed once the commands it's still running finish. If the new version
+     * can't be loaded, the old one stays in place.
+     *
+     * @param module The module to reload.
+     *
+     * @throws Exception If the module isn't loaded or the new version can't be
+     *      loaded.
+     */
+    public synchronized void reloadModule(String module) throws Error, Exception {
+        LoadedModule oldModule = loadedModulesWithCommands.get(module);
+
+        if (oldModule == null) {
+            throw new Exception("Module not loaded");
+        }
+
+        PreparedModule preparedModule;
+
+        try {
+            preparedModule = prepareModule(oldModule.getFile(), oldModule.isLazy());
+        } finally {
+            getModuleScanCache().save();
+        }
+
+        try {
+            commandCollection.replaceCommands(oldModule.getCommands(), preparedModule.commands());
+        } catch (Error | Exception e) {
+            preparedModule.module().close();
+            throw e;
+        }
+
+        preparedModule.module().getCommands().addAll(preparedModule.commands().keySet());
+        loadedModulesWithCommands.put(module, preparedModule.module());
+        oldModule.closeWhenIdle();
+        moduleLeakTracker.track(oldModule);
+    }
+
+    /**
+     * Starts watching the plugins home directory, reloading loaded modules
+     * whose JAR files change.
+     *
+     * @return True if the watch was started, false if it was already running.
+     * @throws IOException If the directory can't be watched.
+     */
+    public synchronized boolean startWatching() throws IOException {
+        if (pluginWatcher != null) {
             return false;
         }
+
+        pluginWatcher = new PluginWatcher(Path.of(getPluginsHomePath()), this);
+        pluginWatcher.start();
+
+        return true;
+    }
+
+    /**
+     * Stops watching the plugins home directory.
+     *
+     * @return True if the watch was stopped, false if it wasn't running.
+     */
+    public synchronized boolean stopWatching() {
+        if (pluginWatcher == null) {
+            return false;
+        }
+
+        pluginWatcher.stop();
+        pluginWatcher = null;
+
+        return true;
+    }
+
+    public synchronized boolean isWatching() {
+        return pluginWatcher != null;
+    }
+
+    /**
+     * Checks whether a loaded module was loaded from the plugins home directory.
+     *
+     * @param module The module.
+     *
+     * @return True if the module is loaded from the plugins home directory.
+     */
+    boolean isLoadedFromPluginsHome(String module) {
+        LoadedModule loadedModule = loadedModulesWithCommands.get(module);
+
+        return loadedModule != null && loadedModule.getFile().getAbsoluteFile().getParentFile()
+                .equals(new File(getPluginsHomePath()).getAbsoluteFile());
     }
 
     /**
@@ -206,11 +548,16 @@ public enum LoaderCore {
      *
      * @return True if the module was unloaded, false if the module was not found.
      */
-    public boolean unloadModule(String module) {
+    public synchronized boolean unloadModule(String module) {
         if (mapContainsKey(loadedModulesWithCommands, module)) {
-            ArrayList<String> commandsToRemove = loadedModulesWithCommands.get(module);
-            commandCollection.removeCommands(commandsToRemove);
-            loadedModulesWithCommands.remove(module);
+            LoadedModule loadedModule = loadedModulesWithCommands.remove(module);
+            commandCollection.removeCommands(loadedModule.getCommands());
+            bulkheads.remove(module);
+            loadedModule.closeWhenIdle();
+
+            // The class loader is tracked without being referenced, so it
+            // (and every class of the module) can be garbage collected.
+            moduleLeakTracker.track(loadedModule);
 
             return true;
         } else {
@@ -218,6 +565,200 @@ public enum LoaderCore {
         }
     }
 
+    /**
+     * Checks whether the class loaders of an unloaded module have been garbage
+     * collected, requesting garbage collections until they are or the timeout
+     * expires.
+     *
+     * @param module The unloaded module.
+     * @param timeoutMillis The maximum time to wait, in milliseconds.
+     *
+     * @return True if the class loaders were collected, false if any of them
+     *      is still reachable.
+     * @throws Exception If the module is still loaded.
+     */
+    public boolean awaitModuleCollected(String module, long timeoutMillis) throws Exception {
+        if (mapContainsKey(loadedModulesWithCommands, module)) {
+            throw new Exception("Module is still loaded");
+        }
+
+        return moduleLeakTracker.awaitCollected(module, timeoutMillis);
+    }
+
+    /**
+     * Describes every loaded module, including the classes and the metaspace
+     * used by its class loader.
+     *
+     * @return The details of the loaded modules, ordered by name.
+     */
+    public List<ModuleDetails> getModuleDetails() {
+        Map<String, MetaspaceUsage.Usage> metaspaceUsage = MetaspaceUsage.byLoaderName();
+
+        return loadedModulesWithCommands.values().stream()
+                .sorted(Comparator.comparing(LoadedModule::getName))
+                .map(loadedModule -> {
+                    MetaspaceUsage.Usage usage = metaspaceUsage.get(loadedModule.getClassLoader().getName());
+
+                    return new ModuleDetails(loadedModule.getName(),
+                            loadedModule.getCommands().size(),
+                            loadedModule.isLazy(),
+                            (int) loadedModule.getGroups().stream().filter(CommandGroup::isActive).count(),
+                            loadedModule.getGroups().size(),
+                            loadedModule.getClassLoader().getDefinedClassCount(),
+                            usage != null ? usage.committedBytes() : -1);
+                })
+                .toList();
+    }
+
+    /**
+     * Finds the unloaded modules whose class loaders are still reachable after
+     * a garbage collection, which means they are leaking.
+     *
+     * @return The leaking modules, oldest first.
+     * @throws InterruptedException If the thread is interrupted while waiting
+     *      for the garbage collection.
+     */
+    public List<LeakedModule> findLeakedModules() throws InterruptedException {
+        if (moduleLeakTracker.awaitCollected(null, LEAK_CHECK_MILLIS)) {
+            return List.of();
+        }
+
+        Map<String, MetaspaceUsage.Usage> metaspaceUsage = MetaspaceUsage.byLoaderName();
+        long now = System.nanoTime();
+
+        return moduleLeakTracker.getPending().stream()
+                .map(unloadedModule -> {
+                    MetaspaceUsage.Usage usage = metaspaceUsage.get(unloadedModule.loaderName());
+
+                    return new LeakedModule(unloadedModule.module(), unloadedModule.loaderName(),
+                            now - unloadedModule.unloadedAtNanos(),
+                            usage != null ? usage.committedBytes() : -1,
+                            moduleLeakTracker.findRetainers(unloadedModule));
+                })
+                .toList();
+    }
+
+    /**
+     * Returns how many class loaders of unloaded modules have been garbage
+     * collected.
+     *
+     * @return The number of collected class loaders.
+     */
+    public long getCollectedModuleCount() {
+        return moduleLeakTracker.getCollectedCount();
+    }
+
+    /**
+     * Returns the bulkhead limits and metrics of every loaded module.
+     *
+     * @return The bulkhead statistics, ordered by module name.
+     */
+    public List<BulkheadStats> getBulkheadStats() {
+        return bulkheads.entrySet().stream()
+                .filter(entry -> loadedModulesWithCommands.containsKey(entry.getKey()))
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> {
+                    ModuleBulkhead bulkhead = entry.getValue();
+                    ModuleBulkhead.Limits limits = bulkhead.getLimits();
+
+                    return new BulkheadStats(entry.getKey(), limits.maxConcurrent(), limits.maxQueued(),
+                            limits.timeoutMillis(), bulkhead.getActive(), bulkhead.getQueued(),
+                            bulkhead.getCompleted(), bulkhead.getRejected(), bulkhead.getTimedOut(),
+                            bulkhead.getCancelled(), bulkhead.getWaitTimes());
+                })
+                .toList();
+    }
+
+    /**
+     * Changes the bulkhead limits of a loaded module, until it's unloaded.
+     *
+     * @param module The module.
+     * @param maxConcurrent How many of its commands may run at once.
+     * @param maxQueued How many of its commands may wait for a place to run.
+     * @param timeoutMillis How long its commands may take, or 0 for no limit.
+     *
+     * @throws Exception If the module isn't loaded or the limits are invalid.
+     */
+    public void setBulkheadLimits(String module, int maxConcurrent, int maxQueued, long timeoutMillis)
+            throws Exception {
+        ModuleBulkhead bulkhead = getBulkhead(module);
+
+        try {
+            bulkhead.setLimits(new ModuleBulkhead.Limits(maxConcurrent, maxQueued, timeoutMillis));
+        } catch (IllegalArgumentException e) {
+            throw new Exception(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Interrupts the commands of a loaded module that are running now.
+     *
+     * @param module The module.
+     *
+     * @return The number of commands interrupted.
+     * @throws Exception If the module isn't loaded.
+     */
+    public int cancelRunningCommands(String module) throws Exception {
+        return getBulkhead(module).cancelRunning();
+    }
+
+    private ModuleBulkhead getBulkhead(String module) throws Exception {
+        ModuleBulkhead bulkhead = loadedModulesWithCommands.containsKey(module) ? bulkheads.get(module) : null;
+
+        if (bulkhead == null) {
+            throw new Exception("Module not loaded");
+        }
+
+        return bulkhead;
+    }
+
+    /**
+     * Returns the persistent cache of module scans.
+     *
+     * @return The module scan cache.
+     */
+    public ModuleScanCache getModuleScanCache() {
+        loadConfiguration();
+        return moduleScanCache;
+    }
+
+    /**
+     * Reads the configuration of the loader, unless it was already read. It's
+     * read the first time it's needed, so calling this in the background moves
+     * reading it off the path of the first command that needs it.
+     *
+     * @throws RuntimeException If the plugins home directory doesn't exist.
+     */
+    public void loadConfiguration() {
+        if (configuration != null) {
+            return;
+        }
+
+        synchronized (configurationLock) {
+            if (configuration == null) {
+                long start = System.nanoTime();
+                LoaderConfiguration newConfiguration = LoaderConfiguration.load();
+
+                if (!new File(newConfiguration.pluginsHomePath()).exists()) {
+                    throw new RuntimeException("Plugins home directory does not exist");
+                }
+
+                moduleScanCache = new ModuleScanCache(newConfiguration.pluginsHomePath());
+                configuration = newConfiguration;
+                StartupTimer.INSTANCE.getInstance().record("configuration", System.nanoTime() - start);
+            }
+        }
+    }
+
+    private LoaderConfiguration getConfiguration() {
+        loadConfiguration();
+        return configuration;
+    }
+
+    private String getPluginsHomePath() {
+        return getConfiguration().pluginsHomePath();
+    }
+
     private boolean mapIsNullOrEmpty(final Map<?, ?> map) {
         return map == null || map.isEmpty();
     }
@@ -226,24 +767,76 @@ public enum LoaderCore {
         return !mapIsNullOrEmpty(map) && map.containsKey(key);
     }
 
-    private static Map<String, Consumer<String[]>> getCommandsFromGroup(Class<?> groupClass,
-                                                                        Object groupInstance) {
-        Map<String, Consumer<String[]>> toret = new HashMap<>();
+    private static boolean isGlob(String fileName) {
+        return fileName.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    private static List<CommandIndex.Group> scanGroups(ClassLoader classLoader, File file) throws Exception {
+        try (JarFile jar = new JarFile(file)) {
+            // Modules built with the command index processor describe their
+            // command groups, so no class in the JAR has to be loaded.
+            Optional<CommandIndex> commandIndex = CommandIndex.read(jar);
+
+            if (commandIndex.isPresent()) {
+                return commandIndex.get().groups();
+            }
+
+            return getGroupClassesFromJar(classLoader, jar).stream()
+                    .map(LoaderCore::describeGroup)
+                    .toList();
+        }
+    }
+
+    private static List<Class<?>> getGroupClassesFromJar(ClassLoader classLoader,
+                                                        JarFile jar) throws Exception {
+        List<String> classNames = new ArrayList<>();
+        Enumeration<JarEntry> entries = jar.entries();
+
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+
+            if (entry.getName().endsWith(".class")) {
+                classNames.add(entry.getName()
+                        .replace("/", ".")
+                        .replace(".class", ""));
+            }
+        }
+
+        // Large JARs are scanned in parallel. Module class loaders are parallel
+        // capable, so classes in different packages don't contend for a lock.
+        Stream<String> classNameStream = classNames.size() >= PARALLEL_SCAN_THRESHOLD
+                ? classNames.parallelStream()
+                : classNames.stream();
+
+        try {
+            return classNameStream
+                    .<Class<?>>map(className -> {
+                        try {
+                            return classLoader.loadClass(className);
+                        } catch (ClassNotFoundException e) {
+                            throw new CompletionException(e);
+                        }
+                    })
+                    .filter(loadedClass -> loadedClass.isAnnotationPresent(CliCommandGroup.class))
+                    .toList();
+        } catch (CompletionException e) {
+            throw (ClassNotFoundException) e.getCause();
+        }
+    }
+
+    private static CommandIndex.Group describeGroup(Class<?> groupClass) {
+        Map<String, String> commands = new LinkedHashMap<>();
 
         for (Method method : groupClass.getDeclaredMethods()) {
             if (method.isAnnotationPresent(CliCommand.class)) {
-                CliCommand cliCommand = method.getAnnotation(CliCommand.class);
-
-                toret.put(cliCommand.command(), consumer -> {
-                    try {
-                        method.invoke(groupInstance, (Object) consumer);
-                    } catch (Exception ignored) {
-                        ANSIHelpers.printRedAndBold("Error executing command " + cliCommand.command());
-                    }
-                });
+                commands.put(method.getAnnotation(CliCommand.class).command(), method.getName());
             }
         }
 
-        return toret;
+        return new CommandIndex.Group(groupClass.getName(), commands);
+    }
+
+    private record PreparedModule(LoadedModule module, Map<String, Consumer<String[]>> commands,
+                                  ModuleBulkhead bulkhead) {
     }
 }
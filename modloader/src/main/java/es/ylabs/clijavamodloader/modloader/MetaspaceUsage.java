@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.management.ObjectName;
+
+/**
+ * Reads the metaspace used by each class loader, from the output of the
+ * {@code VM.metaspace show-loaders} diagnostic command of HotSpot.
+ * <p>
+ * Figures are the metaspace committed for the classes of each loader,
+ * including hidden classes such as the ones backing lambdas, so they are an
+ * approximation of what is released when the loader is collected. On JVMs
+ * without the command, no figures are returned.
+ */
+final class MetaspaceUsage {
+
+    /**
+     * Metaspace used by a class loader.
+     *
+     * @param classes The number of classes, including hidden ones.
+     * @param committedBytes The metaspace committed for the classes.
+     */
+    record Usage(int classes, long committedBytes) {
+    }
+
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+    private static final String OPERATION_METASPACE = "vmMetaspace";
+
+    private static final Pattern LOADER_LINE = Pattern.compile(
+            "^\\s*\\d+: CLD \\S+: .*\"([^\"]+)\".*?(\\d+) (?:hidden )?class(?:es)?\\s*$");
+    private static final Pattern TOTAL_LINE = Pattern.compile(
+            "^\\s*Both:.*?([\\d.]+) (bytes|KB|MB|GB) \\(\\s*\\d+%\\) committed");
+
+    private MetaspaceUsage() {
+    }
+
+    /**
+     * Reads the metaspace used by every named class loader.
+     *
+     * @return A map from the names of the class loaders to their usage, which
+     *      is empty if it can't be read.
+     */
+    static Map<String, Usage> byLoaderName() {
+        String report;
+
+        try {
+            report = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                    new ObjectName(DIAGNOSTIC_COMMAND), OPERATION_METASPACE,
+                    new Object[]{ new String[]{ "show-loaders" } },
+                    new String[]{ String[].class.getName() });
+        } catch (Exception e) {
+            return Map.of();
+        }
+
+        Map<String, Usage> usages = new HashMap<>();
+        String loaderName = null;
+        int classes = 0;
+
+        for (String line : report.split("\n")) {
+            Matcher loaderMatcher = LOADER_LINE.matcher(line);
+
+            if (loaderMatcher.find()) {
+                loaderName = loaderMatcher.group(1);
+                classes = Integer.parseInt(loaderMatcher.group(2));
+                continue;
+            }
+
+            Matcher totalMatcher = TOTAL_LINE.matcher(line);
+
+            if (loaderName != null && totalMatcher.find()) {
+                // Hidden classes get their own entries, which are added to
+                // the ones of their class loader.
+                long committedBytes = toBytes(totalMatcher.group(1), totalMatcher.group(2));
+
+                usages.merge(loaderName, new Usage(classes, committedBytes), (a, b) ->
+                        new Usage(a.classes() + b.classes(), a.committedBytes() + b.committedBytes()));
+                loaderName = null;
+            }
+        }
+
+        return usages;
+    }
+
+    private static long toBytes(String amount, String unit) {
+        double value = Double.parseDouble(amount);
+
+        return switch (unit) {
+            case "KB" -> (long) (value * 1024);
+            case "MB" -> (long) (value * 1024 * 1024);
+            case "GB" -> (long) (value * 1024 * 1024 * 1024);
+            default -> (long) value;
+        };
+    }
+}
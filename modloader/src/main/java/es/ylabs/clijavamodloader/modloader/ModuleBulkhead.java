@@ -0,0 +1,398 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import es.ylabs.clijavamodloader.commands.management.LatencyHistogram;
+import es.ylabs.clijavamodloader.commands.management.PipelineStages;
+import es.ylabs.clijavamodloader.streams.RecordSink;
+import es.ylabs.clijavamodloader.streams.StreamingCommand;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Bounds how many commands of a module run at once.
+ * <p>
+ * Commands still run on the thread that calls them, so their output keeps
+ * going wherever that thread's output goes. A command that finds the module
+ * at its limit waits in a bounded queue; if the queue is full too, it's
+ * rejected right away. With a timeout, the command is interrupted once the
+ * time since it was called, including the time it waited, runs out; commands
+ * can also be cancelled all at once. Either way, only commands that react to
+ * interrupts actually stop early.
+ * <p>
+ * A command of a module that runs another command of the same module through
+ * the command collection takes two places, so a limit of one would make it
+ * wait forever.
+ */
+final class ModuleBulkhead {
+
+    /**
+     * Limits of a module.
+     *
+     * @param maxConcurrent How many commands may run at once.
+     * @param maxQueued How many commands may wait for a place to run.
+     * @param timeoutMillis How long a command may take, or 0 for no limit.
+     */
+    record Limits(int maxConcurrent, int maxQueued, long timeoutMillis) {
+
+        static final Limits DEFAULT = new Limits(32, 256, 0);
+
+        Limits {
+            if (maxConcurrent <= 0 || maxQueued < 0 || timeoutMillis < 0) {
+                throw new IllegalArgumentException("Invalid bulkhead limits");
+            }
+        }
+    }
+
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(
+            runnable -> Thread.ofPlatform().name("bulkhead-timeouts").daemon().unstarted(runnable));
+
+    private final String module;
+    private final ReentrantLock lock;
+    private final Condition placeAvailable;
+    private final Set<Invocation> running;
+    private final LatencyHistogram waitTimes;
+    private final LongAdder completed;
+    private final LongAdder rejected;
+    private final LongAdder timedOut;
+    private final LongAdder cancelled;
+    private volatile Limits limits;
+    private int active;
+    private int queued;
+
+    ModuleBulkhead(String module, Limits limits) {
+        this.module = module;
+        this.lock = new ReentrantLock();
+        this.placeAvailable = lock.newCondition();
+        this.running = ConcurrentHashMap.newKeySet();
+        this.waitTimes = new LatencyHistogram();
+        this.completed = new LongAdder();
+        this.rejected = new LongAdder();
+        this.timedOut = new LongAdder();
+        this.cancelled = new LongAdder();
+        this.limits = limits;
+    }
+
+    Limits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Changes the limits. Commands already running or waiting aren't affected
+     * by the new timeout.
+     *
+     * @param newLimits The new limits.
+     */
+    void setLimits(Limits newLimits) {
+        lock.lock();
+
+        try {
+            limits = newLimits;
+            placeAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getActive() {
+        lock.lock();
+
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getQueued() {
+        lock.lock();
+
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    long getCompleted() {
+        return completed.sum();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    long getCancelled() {
+        return cancelled.sum();
+    }
+
+    /**
+     * Interrupts every command of the module that is running now.
+     *
+     * @return The number of commands interrupted.
+     */
+    int cancelRunning() {
+        int count = 0;
+
+        for (Invocation invocation : running) {
+            if (invocation.interrupt(false)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Wraps a command so it runs within the limits of the bulkhead.
+     * <p>
+     * The bulkhead outlives reloads, so the running commands of each version
+     * of the module are counted by that version, which isn't closed while
+     * any of them is still running or waiting.
+     *
+     * @param loadedModule The version of the module the command belongs to.
+     * @param command The command.
+     *
+     * @return The wrapped command, which can be piped like the original one.
+     */
+    Consumer<String[]> wrap(LoadedModule loadedModule, Consumer<String[]> command) {
+        return new BulkheadCommand(this, loadedModule, command);
+    }
+
+    private void run(Runnable body) {
+        long start = System.nanoTime();
+        long timeoutMillis = limits.timeoutMillis();
+        long deadline = timeoutMillis > 0 ? start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+
+        acquire(deadline);
+        waitTimes.record(System.nanoTime() - start);
+
+        Invocation invocation = new Invocation(Thread.currentThread());
+        ScheduledFuture<?> timeout = deadline != 0
+                ? TIMEOUTS.schedule(() -> invocation.interrupt(true), deadline - System.nanoTime(),
+                        TimeUnit.NANOSECONDS)
+                : null;
+
+        running.add(invocation);
+        boolean bodyCompleted = false;
+
+        try {
+            body.run();
+            bodyCompleted = true;
+        } finally {
+            running.remove(invocation);
+
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+
+            release();
+            invocation.finish(timeoutMillis, bodyCompleted);
+        }
+    }
+
+    private void acquire(long deadline) {
+        lock.lock();
+
+        try {
+            if (active >= limits.maxConcurrent()) {
+                if (queued >= limits.maxQueued()) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Module " + module + " is busy: " + active
+                            + " commands running and " + queued + " waiting");
+                }
+
+                queued++;
+                boolean acquired = false;
+
+                try {
+                    while (active >= limits.maxConcurrent()) {
+                        if (deadline == 0) {
+                            placeAvailable.await();
+                        } else {
+                            long remaining = deadline - System.nanoTime();
+
+                            if (remaining <= 0) {
+                                timedOut.increment();
+                                throw new RejectedExecutionException("Timed out waiting for module "
+                                        + module + " after " + limits.timeoutMillis() + " ms");
+                            }
+
+                            placeAvailable.awaitNanos(remaining);
+                        }
+                    }
+
+                    acquired = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelled.increment();
+                    throw new CancellationException("Cancelled while waiting for module " + module);
+                } finally {
+                    queued--;
+
+                    // This command may have been signalled just before giving
+                    // up, so the place goes to the next waiting command.
+                    if (!acquired && active < limits.maxConcurrent()) {
+                        placeAvailable.signal();
+                    }
+                }
+            }
+
+            active++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+
+        try {
+            active--;
+            placeAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A running command, which may be interrupted by its timeout or by a
+     * cancellation, but never after it has finished.
+     */
+    private final class Invocation {
+
+        private final Thread thread;
+        private boolean finished;
+        private boolean timedOut;
+        private boolean cancelled;
+
+        private Invocation(Thread thread) {
+            this.thread = thread;
+        }
+
+        private synchronized boolean interrupt(boolean timeout) {
+            if (finished || timedOut || cancelled) {
+                return false;
+            }
+
+            if (timeout) {
+                timedOut = true;
+            } else {
+                cancelled = true;
+            }
+
+            thread.interrupt();
+
+            return true;
+        }
+
+        /**
+         * Marks the command as finished. If it was interrupted by its timeout
+         * or a cancellation, the interrupt is cleared and, unless the command
+         * already failed with its own exception, reported as a
+         * {@link CancellationException}.
+         *
+         * @param timeoutMillis The timeout of the command.
+         * @param bodyCompleted Whether the command returned normally.
+         */
+        private void finish(long timeoutMillis, boolean bodyCompleted) {
+            boolean wasTimedOut;
+            boolean wasCancelled;
+
+            synchronized (this) {
+                finished = true;
+                wasTimedOut = timedOut;
+                wasCancelled = cancelled;
+            }
+
+            if (wasTimedOut || wasCancelled) {
+                // The interrupt was meant for the command, not for the caller.
+                Thread.interrupted();
+            }
+
+            if (wasTimedOut) {
+                ModuleBulkhead.this.timedOut.increment();
+            } else if (wasCancelled) {
+                ModuleBulkhead.this.cancelled.increment();
+            } else {
+                completed.increment();
+            }
+
+            // Otherwise, the exception of the command is the one propagated.
+            if (bodyCompleted && wasTimedOut) {
+                throw new CancellationException("Timed out after " + timeoutMillis + " ms");
+            } else if (bodyCompleted && wasCancelled) {
+                throw new CancellationException("Cancelled");
+            }
+        }
+    }
+
+    private record BulkheadCommand(ModuleBulkhead bulkhead, LoadedModule loadedModule,
+                                   Consumer<String[]> command)
+            implements Consumer<String[]>, StreamingCommand {
+
+        @Override
+        public void accept(String[] args) {
+            loadedModule.commandStarted();
+
+            try {
+                bulkhead.run(() -> command.accept(args));
+            } finally {
+                loadedModule.commandFinished();
+            }
+        }
+
+        @Override
+        public void run(String[] args, Iterator<String> input, RecordSink output) {
+            loadedModule.commandStarted();
+
+            try {
+                bulkhead.run(() -> PipelineStages.run(command, args, input, output));
+            } finally {
+                loadedModule.commandFinished();
+            }
+        }
+    }
+}
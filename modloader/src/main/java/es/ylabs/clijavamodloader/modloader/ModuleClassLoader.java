@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class loader of a module. It keeps count of the classes it defines.
+ */
+final class ModuleClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final AtomicInteger definedClassCount;
+    private MethodHandles.Lookup lookup;
+
+    ModuleClassLoader(String name, URL[] urls, ClassLoader parent) {
+        super(name, urls, parent);
+        definedClassCount = new AtomicInteger();
+    }
+
+    /**
+     * Returns the number of classes defined by this class loader, not counting
+     * hidden classes such as the ones backing lambdas.
+     *
+     * @return The number of classes.
+     */
+    int getDefinedClassCount() {
+        return definedClassCount.get();
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> foundClass = super.findClass(name);
+        definedClassCount.incrementAndGet();
+        return foundClass;
+    }
+
+    /**
+     * Returns a full privilege lookup on a class defined by this class loader.
+     * The first call defines a copy of {@link ModuleLookup} in this class loader.
+     *
+     * @return The lookup.
+     * @throws Exception If the lookup class can't be defined.
+     */
+    synchronized MethodHandles.Lookup getLookup() throws Exception {
+        if (lookup == null) {
+            byte[] classBytes;
+
+            try (InputStream inputStream = Objects.requireNonNull(ModuleLookup.class
+                    .getResourceAsStream(ModuleLookup.class.getSimpleName() + ".class"))) {
+                classBytes = inputStream.readAllBytes();
+            }
+
+            Class<?> lookupClass = defineClass(ModuleLookup.class.getName(),
+                    classBytes, 0, classBytes.length);
+            definedClassCount.incrementAndGet();
+            lookup = (MethodHandles.Lookup) lookupClass.getMethod("lookup").invoke(null);
+        }
+
+        return lookup;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the class loaders of unloaded modules until they are garbage
+ * collected.
+ * <p>
+ * Every class loader is registered with a {@link Cleaner} when its module is
+ * unloaded, and it's forgotten once it's collected. Only weak references to
+ * it are kept, so tracking it never keeps it alive. A class loader that stays
+ * reachable is a leak: something still references the module's classes, its
+ * group instances or the commands bound to them.
+ */
+final class ModuleLeakTracker {
+
+    /**
+     * A module whose class loader hasn't been collected yet.
+     *
+     * @param module The name of the module.
+     * @param loaderName The name of its class loader.
+     * @param unloadedAtNanos When the module was unloaded, as given by
+     *                        {@link System#nanoTime()}.
+     * @param classLoader A weak reference to its class loader.
+     */
+    record UnloadedModule(String module, String loaderName, long unloadedAtNanos,
+                          WeakReference<ModuleClassLoader> classLoader) {
+    }
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final long GC_POLL_MILLIS = 10;
+
+    private final Map<String, UnloadedModule> pending;
+    private final AtomicLong collectedCount;
+
+    ModuleLeakTracker() {
+        pending = new ConcurrentHashMap<>();
+        collectedCount = new AtomicLong();
+    }
+
+    /**
+     * Starts tracking the class loader of an unloaded module.
+     *
+     * @param loadedModule The unloaded module.
+     */
+    void track(LoadedModule loadedModule) {
+        ModuleClassLoader classLoader = loadedModule.getClassLoader();
+        String loaderName = classLoader.getName();
+
+        pending.put(loaderName, new UnloadedModule(loadedModule.getName(), loaderName,
+                System.nanoTime(), new WeakReference<>(classLoader)));
+
+        // The cleaning action must not reference the class loader, or it
+        // would never become unreachable.
+        CLEANER.register(classLoader, () -> {
+            pending.remove(loaderName);
+            collectedCount.incrementAndGet();
+        });
+    }
+
+    /**
+     * Returns the unloaded modules whose class loaders haven't been collected
+     * yet, oldest first.
+     *
+     * @return The unloaded modules.
+     */
+    List<UnloadedModule> getPending() {
+        List<UnloadedModule> unloadedModules = new ArrayList<>(pending.values());
+        unloadedModules.sort(Comparator.comparingLong(UnloadedModule::unloadedAtNanos));
+        return unloadedModules;
+    }
+
+    long getCollectedCount() {
+        return collectedCount.get();
+    }
+
+    /**
+     * Requests garbage collections until the class loaders of the given
+     * module are collected, or the timeout expires.
+     *
+     * @param module The name of the module, or null for every unloaded module.
+     * @param timeoutMillis How long to wait.
+     *
+     * @return True if no class loader of the module is left.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    boolean awaitCollected(String module, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        while (isPending(module) && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(GC_POLL_MILLIS);
+        }
+
+        return !isPending(module);
+    }
+
+    /**
+     * Looks for what keeps the class loader of an unloaded module alive. Only
+     * live platform threads can be inspected: the ones running code of the
+     * module or using its class loader as their context class loader. Any
+     * other reference can only be found in a heap dump.
+     *
+     * @param unloadedModule The unloaded module.
+     *
+     * @return A description of every reference found.
+     */
+    List<String> findRetainers(UnloadedModule unloadedModule) {
+        ModuleClassLoader classLoader = unloadedModule.classLoader().get();
+        List<String> retainers = new ArrayList<>();
+
+        if (classLoader == null) {
+            return retainers;
+        }
+
+        for (Map.Entry<Thread, StackTraceElement[]> thread : Thread.getAllStackTraces().entrySet()) {
+            String threadName = thread.getKey().getName();
+
+            if (thread.getKey().getContextClassLoader() == classLoader) {
+                retainers.add("Thread " + threadName + " uses it as its context class loader");
+            }
+
+            for (StackTraceElement frame : thread.getValue()) {
+                if (unloadedModule.loaderName().equals(frame.getClassLoaderName())) {
+                    retainers.add("Thread " + threadName + " is running " + frame.getClassName()
+                            + "." + frame.getMethodName());
+                    break;
+                }
+            }
+        }
+
+        return retainers;
+    }
+
+    private boolean isPending(String module) {
+        return pending.values().stream().anyMatch(unloadedModule ->
+                module == null || unloadedModule.module().equals(module));
+    }
+}
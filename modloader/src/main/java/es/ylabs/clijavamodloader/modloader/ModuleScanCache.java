@@ -0,0 +1,379 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of module scans.
+ * <p>
+ * For every scanned module it records the command groups found and their
+ * commands, keyed by the size, modification time and SHA-256 digest of the
+ * JAR. A module whose size and modification time haven't changed is a hit
+ * without reading the JAR; otherwise its digest is computed and compared, so
+ * touched or copied JARs are hits too.
+ * <p>
+ * The cache is stored in a compact binary file in the plugins home, which is
+ * memory mapped when read and atomically replaced when written.
+ */
+public final class ModuleScanCache {
+
+    /**
+     * A cached module scan.
+     *
+     * @param path The absolute path of the JAR.
+     * @param size The size of the JAR, in bytes.
+     * @param lastModified The modification time of the JAR, in milliseconds.
+     * @param digest The SHA-256 digest of the JAR.
+     * @param groups The command groups of the module.
+     */
+    public record Entry(String path, long size, long lastModified, byte[] digest,
+                        List<CommandIndex.Group> groups) {
+    }
+
+    private record Digest(long size, long lastModified, byte[] digest) {
+    }
+
+    private static final String CACHE_FILE = ".modloader-scan.cache";
+    private static final int MAGIC = 0x434A4D43;
+    private static final short VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path cacheFile;
+    private final Map<String, Entry> entries;
+    private final Map<String, Digest> computedDigests;
+    private boolean loaded;
+    private volatile boolean dirty;
+
+    ModuleScanCache(String pluginsHomePath) {
+        cacheFile = Path.of(pluginsHomePath, CACHE_FILE);
+        entries = new ConcurrentHashMap<>();
+        computedDigests = new ConcurrentHashMap<>();
+        loaded = false;
+        dirty = false;
+    }
+
+    /**
+     * Looks up the scan of a module.
+     *
+     * @param file The JAR of the module.
+     *
+     * @return The command groups of the module, or an empty optional if the
+     *      module isn't cached or has changed.
+     * @throws IOException If the JAR can't be read.
+     */
+    Optional<List<CommandIndex.Group>> get(File file) throws IOException {
+        ensureLoaded();
+
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        Entry entry = entries.get(path);
+
+        if (entry != null && entry.size() == size && entry.lastModified() == lastModified) {
+            return Optional.of(entry.groups());
+        }
+
+        byte[] digest = computeDigest(file, size, lastModified);
+
+        for (Entry candidate : entries.values()) {
+            if (candidate.size() == size && Arrays.equals(candidate.digest(), digest)) {
+                entries.put(path, new Entry(path, size, lastModified, digest, candidate.groups()));
+                dirty = true;
+
+                return Optional.of(candidate.groups());
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Records the scan of a module.
+     *
+     * @param file The JAR of the module.
+     * @param groups The command groups found in the module.
+     *
+     * @throws IOException If the JAR can't be read.
+     */
+    void put(File file, List<CommandIndex.Group> groups) throws IOException {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        entries.put(path, new Entry(path, size, lastModified,
+                computeDigest(file, size, lastModified), List.copyOf(groups)));
+        computedDigests.remove(path);
+        dirty = true;
+    }
+
+    /**
+     * Returns the cached scans, ordered by path.
+     *
+     * @return The cached scans.
+     */
+    public List<Entry> getEntries() {
+        ensureLoaded();
+
+        return entries.values().stream()
+                .sorted(Comparator.comparing(Entry::path))
+                .toList();
+    }
+
+    /**
+     * Removes the cached scans of a module and writes the cache file.
+     *
+     * @param module The file name of the module.
+     *
+     * @return True if any scan was removed.
+     */
+    public synchronized boolean invalidate(String module) {
+        ensureLoaded();
+
+        boolean removed = entries.values().removeIf(entry ->
+                new File(entry.path()).getName().equals(module));
+
+        if (removed) {
+            dirty = true;
+            save();
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes every cached scan and the cache file.
+     *
+     * @throws IOException If the cache file can't be deleted.
+     */
+    public synchronized void clear() throws IOException {
+        entries.clear();
+        computedDigests.clear();
+        loaded = true;
+        dirty = false;
+        Files.deleteIfExists(cacheFile);
+    }
+
+    /**
+     * Writes the cache file if the cache has changed. Errors are ignored, as
+     * the cache is just an optimization.
+     * <p>
+     * The file is written to a temporary file of its own and then moved over
+     * the cache file, so loaders sharing a plugins home never mix their
+     * contents. The cache is marked clean before taking the snapshot, so a scan
+     * recorded while saving marks it dirty again and is written by the next
+     * save.
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+
+        dirty = false;
+
+        List<Entry> snapshot = new ArrayList<>(entries.values());
+        Path temporaryFile = null;
+
+        try {
+            temporaryFile = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), CACHE_FILE, ".tmp");
+            write(temporaryFile, snapshot);
+            Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+
+            if (temporaryFile != null) {
+                try {
+                    Files.deleteIfExists(temporaryFile);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static void write(Path file, List<Entry> snapshot) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file), BUFFER_SIZE))) {
+            output.writeInt(MAGIC);
+            output.writeShort(VERSION);
+            output.writeInt(snapshot.size());
+
+            for (Entry entry : snapshot) {
+                writeString(output, entry.path());
+                output.writeLong(entry.size());
+                output.writeLong(entry.lastModified());
+                output.write(entry.digest());
+                writeCount(output, entry.groups().size());
+
+                for (CommandIndex.Group group : entry.groups()) {
+                    writeString(output, group.className());
+                    writeCount(output, group.commands().size());
+
+                    for (Map.Entry<String, String> command : group.commands().entrySet()) {
+                        writeString(output, command.getKey());
+                        writeString(output, command.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        loaded = true;
+
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                return;
+            }
+
+            int entryCount = buffer.getInt();
+
+            for (int i = 0; i < entryCount; i++) {
+                Entry entry = readEntry(buffer);
+                entries.put(entry.path(), entry);
+            }
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // A corrupted cache is simply discarded.
+            entries.clear();
+            dirty = true;
+        }
+    }
+
+    private byte[] computeDigest(File file, long size, long lastModified) throws IOException {
+        String path = file.getAbsolutePath();
+        Digest computed = computedDigests.get(path);
+
+        if (computed != null && computed.size() == size && computed.lastModified() == lastModified) {
+            return computed.digest();
+        }
+
+        MessageDigest messageDigest;
+
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+
+        byte[] digest = messageDigest.digest();
+        computedDigests.put(path, new Digest(size, lastModified, digest));
+
+        return digest;
+    }
+
+    private static Entry readEntry(ByteBuffer buffer) {
+        String path = readString(buffer);
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        byte[] digest = new byte[DIGEST_LENGTH];
+        buffer.get(digest);
+
+        int groupCount = Short.toUnsignedInt(buffer.getShort());
+        List<CommandIndex.Group> groups = new ArrayList<>(groupCount);
+
+        for (int i = 0; i < groupCount; i++) {
+            String className = readString(buffer);
+            int commandCount = Short.toUnsignedInt(buffer.getShort());
+            Map<String, String> commands = new LinkedHashMap<>();
+
+            for (int j = 0; j < commandCount; j++) {
+                commands.put(readString(buffer), readString(buffer));
+            }
+
+            groups.add(new CommandIndex.Group(className, Collections.unmodifiableMap(commands)));
+        }
+
+        return new Entry(path, size, lastModified, digest, Collections.unmodifiableList(groups));
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeCount(DataOutputStream output, int count) throws IOException {
+        if (count > 0xFFFF) {
+            throw new IOException("Too many groups or commands for the scan cache");
+        }
+
+        output.writeShort(count);
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long for the scan cache");
+        }
+
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.modloader;
+
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the plugins home directory and reloads loaded modules when their
+ * JAR files change.
+ * <p>
+ * File events are debounced: a module is only reloaded once its JAR hasn't
+ * changed for {@value #DEBOUNCE_MILLIS} milliseconds, so a build writing the
+ * JAR in several steps triggers a single reload.
+ */
+final class PluginWatcher implements Runnable {
+
+    private static final long DEBOUNCE_MILLIS = 500;
+    private static final String MODULE_EXTENSION = ".jar";
+
+    private final LoaderCore loaderCore;
+    private final WatchService watchService;
+    private final Map<String, Long> pendingModules;
+    private Thread thread;
+
+    PluginWatcher(Path directory, LoaderCore loaderCore) throws IOException {
+        this.loaderCore = loaderCore;
+        this.watchService = directory.getFileSystem().newWatchService();
+        this.pendingModules = new HashMap<>();
+
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    void start() {
+        thread = Thread.ofPlatform()
+                .name("plugin-watcher")
+                .daemon()
+                .start(this);
+    }
+
+    void stop() {
+        thread.interrupt();
+
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey watchKey = pendingModules.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(getNextDeadline() - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                if (watchKey != null) {
+                    collectEvents(watchKey);
+                }
+
+                reloadQuietModules();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private void collectEvents(WatchKey watchKey) {
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.context() instanceof Path path
+                    && path.getFileName().toString().endsWith(MODULE_EXTENSION)) {
+                pendingModules.put(path.getFileName().toString(),
+                        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS));
+            }
+        }
+
+        watchKey.reset();
+    }
+
+    private long getNextDeadline() {
+        return pendingModules.values().stream().mapToLong(Long::longValue).min().orElseThrow();
+    }
+
+    private void reloadQuietModules() {
+        long now = System.nanoTime();
+        List<String> quietModules = new ArrayList<>();
+
+        pendingModules.forEach((module, deadline) -> {
+            if (deadline - now <= 0) {
+                quietModules.add(module);
+            }
+        });
+
+        for (String module : quietModules) {
+            pendingModules.remove(module);
+
+            if (loaderCore.isLoadedFromPluginsHome(module)) {
+                try {
+                    loaderCore.reloadModule(module);
+                    ANSIHelpers.printYellowAndBold("Module " + module + " reloaded");
+                } catch (Error | Exception e) {
+                    ANSIHelpers.printRedAndBold("Error reloading module " + module
+                            + ", keeping the loaded version");
+                    ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                            "UNKNOWN ERROR"));
+                }
+            }
+        }
+    }
+}
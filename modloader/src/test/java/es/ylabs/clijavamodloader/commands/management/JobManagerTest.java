@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+
+package es.ylabs.clijavamodloader.commands.management;
+
+import es.ylabs.clijavamodloader.commands.coregroups.JobsGroup;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class JobManagerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final JobManager jobManager = JobManager.INSTANCE.getInstance();
+
+    @BeforeAll
+    static void addCommands() throws Exception {
+        JobsGroup jobsGroup = new JobsGroup();
+
+        CommandCollection.INSTANCE.getInstance().addCommands(Map.of(
+                "wait", jobsGroup::waitJob,
+                "waitself", args -> {
+                    // Job threads are named after the id of their job.
+                    String jobId = Thread.currentThread().getName().substring("job-".length());
+                    jobsGroup.waitJob(new String[]{ "wait", jobId });
+                }));
+    }
+
+    @Test
+    void waitForAllSkipsTheJobOfTheCallingThread() {
+        jobManager.submit("wait");
+
+        assertEquals(0L, assertTimeoutPreemptively(TIMEOUT, jobManager::waitForAll));
+        assertEquals(0, jobManager.getJobs().size());
+    }
+
+    @Test
+    void waitForAllSkipsTheJobOfAPipelineStage() {
+        jobManager.submit("wait | wait");
+
+        assertEquals(0L, assertTimeoutPreemptively(TIMEOUT, jobManager::waitForAll));
+    }
+
+    @Test
+    void waitForTheJobOfTheCallingThreadFails() {
+        jobManager.submit("waitself");
+
+        assertEquals(1L, assertTimeoutPreemptively(TIMEOUT, jobManager::waitForAll));
+    }
+}
@@ -8,3 +8,7 @@ include("modlibrary")
 include("modloader")
 
 include("examplemod")
+
+include("benchmarks")
+
+include("soak")
@@ -0,0 +1,54 @@
+plugins {
+    id("java")
+    id("application")
+}
+
+application {
+    mainClass = "es.ylabs.clijavamodloader.soak.SoakDriver"
+}
+
+dependencies {
+    implementation(project(":modlibrary"))
+    implementation(project(":modloader"))
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(libs.versions.java.get())
+    }
+}
+
+repositories {
+    mavenCentral()
+}
+
+tasks {
+    // Synthetic plugins are compiled with the compiler of the toolchain JDK.
+    val soakLauncher = javaToolchains.launcherFor {
+        languageVersion = JavaLanguageVersion.of(libs.versions.java.get())
+    }
+
+    named<JavaExec>("run") {
+        group = "verification"
+        description = "Runs load/execute/unload cycles against synthetic plugins and writes a JSON Lines report."
+
+        javaLauncher = soakLauncher
+        workingDir = layout.buildDirectory.dir("soak").get().asFile
+
+        // A small heap makes leaks show up as failures instead of slow growth.
+        jvmArgs("-Xmx512m", "-XX:+HeapDumpOnOutOfMemoryError")
+
+        doFirst {
+            workingDir.mkdirs()
+        }
+    }
+
+    register<JavaExec>("generatePlugins") {
+        group = "build"
+        description = "Generates synthetic plugin JARs, for soak tests and manual load tests."
+
+        javaLauncher = soakLauncher
+        classpath = sourceSets.main.get().runtimeClasspath
+        mainClass = "es.ylabs.clijavamodloader.soak.SyntheticPluginGenerator"
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.soak;
+
+import es.ylabs.clijavamodloader.commands.management.CommandCollection;
+import es.ylabs.clijavamodloader.commands.management.LatencyHistogram;
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+import es.ylabs.clijavamodloader.modloader.LoaderCore;
+import es.ylabs.clijavamodloader.output.CliOutput;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+
+/**
+ * Soak test of the loader: loads synthetic plugins, runs every one of their
+ * commands and unloads them again, thousands of times, sampling load times,
+ * command latencies, heap, metaspace and loaded classes along the way.
+ * <p>
+ * Leaks show up as plugins whose class loaders are never collected or as
+ * classes and memory growing with the number of cycles; superlinear behaviour
+ * as timings growing with them. Both are flagged in the summary of the report,
+ * and make the driver exit with status 1.
+ */
+public final class SoakDriver {
+
+    private static final String METASPACE_POOL = "Metaspace";
+    // A plugin that leaks keeps all its classes, so anything close to one
+    // class per cycle is suspicious once the warm-up is over.
+    private static final double LEAK_CLASSES_PER_KILO_CYCLE = 500;
+    private static final double SUPERLINEAR_GROWTH = 2.0;
+
+    private final SoakOptions options;
+    private final LoaderCore loaderCore;
+    private final CommandCollection commandCollection;
+    private final MemoryMXBean memoryBean;
+    private final ClassLoadingMXBean classLoadingBean;
+    private final MemoryPoolMXBean metaspacePool;
+
+    private final LatencyHistogram loadTimes = new LatencyHistogram();
+    private final LatencyHistogram unloadTimes = new LatencyHistogram();
+    private final LatencyHistogram commandTimes = new LatencyHistogram();
+    private final List<SoakReport.Sample> samples = new ArrayList<>();
+
+    private long unloadedModules;
+    private long failures;
+    private String firstError;
+    private boolean aborted;
+
+    private SoakDriver(SoakOptions options) {
+        this.options = options;
+        this.loaderCore = LoaderCore.INSTANCE.getInstance();
+        this.commandCollection = CommandCollection.INSTANCE.getInstance();
+        this.memoryBean = ManagementFactory.getMemoryMXBean();
+        this.classLoadingBean = ManagementFactory.getClassLoadingMXBean();
+        this.metaspacePool = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getName().equals(METASPACE_POOL))
+                .findFirst()
+                .orElse(null);
+    }
+
+    public static void main(String[] args) {
+        try {
+            SoakReport.Summary summary = new SoakDriver(SoakOptions.parse(args)).run();
+
+            if (summary.failures() > 0 || summary.leakSuspected() || summary.superlinearSuspected()) {
+                ANSIHelpers.printRedAndBold(String.format(Locale.ROOT,
+                        "Soak test failed: %d failures, %d leaked modules, leak suspected: %b, "
+                                + "superlinear behaviour suspected: %b",
+                        summary.failures(), summary.leakedModules().size(),
+                        summary.leakSuspected(), summary.superlinearSuspected()));
+                System.exit(1);
+            }
+
+            ANSIHelpers.printGreenAndBold("Soak test passed");
+        } catch (Exception e) {
+            ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                    "UNKNOWN ERROR"));
+            System.exit(-1);
+        }
+    }
+
+    private SoakReport.Summary run() throws Exception {
+        boolean temporaryDirectory = options.directory() == null;
+        Path directory = temporaryDirectory
+                ? Files.createTempDirectory("soak-plugins")
+                : Files.createDirectories(Path.of(options.directory()));
+        List<String> plugins = new ArrayList<>();
+        List<List<String>> pluginCommands = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < options.plugins(); i++) {
+                String plugin = SyntheticPluginGenerator.pluginName(i);
+
+                SyntheticPluginGenerator.generate(directory, plugin, options.shape());
+                plugins.add(plugin);
+                pluginCommands.add(SyntheticPluginGenerator.commandNames(plugin, options.shape()));
+            }
+
+            CliOutput.println(String.format(Locale.ROOT,
+                    "Generated %d plugins in %s, running %d cycles", plugins.size(), directory, options.cycles()));
+
+            try (SoakReport report = new SoakReport(Path.of(options.reportFile()))) {
+                SoakReport.Summary summary = runCycles(directory, plugins, pluginCommands, report);
+                report.write(summary);
+                CliOutput.println("Report written to " + Path.of(options.reportFile()).toAbsolutePath());
+
+                return summary;
+            }
+        } finally {
+            for (String plugin : plugins) {
+                loaderCore.unloadModule(plugin);
+                loaderCore.getModuleScanCache().invalidate(plugin);
+            }
+
+            if (temporaryDirectory) {
+                SyntheticPluginGenerator.delete(directory);
+            }
+        }
+    }
+
+    private SoakReport.Summary runCycles(Path directory, List<String> plugins, List<List<String>> pluginCommands,
+                                         SoakReport report) throws Exception {
+        long start = System.nanoTime();
+        long windowStart = start;
+        long windowCycles = 0;
+        long cycle = 0;
+
+        while (cycle < options.cycles() && !aborted) {
+            int index = (int) (cycle % plugins.size());
+            runCycle(directory, plugins.get(index), pluginCommands.get(index));
+            cycle++;
+            windowCycles++;
+
+            if (cycle % options.sampleEvery() == 0 || cycle == options.cycles() || aborted) {
+                long now = System.nanoTime();
+                SoakReport.Sample sample = sample(cycle, now - start, windowCycles, now - windowStart);
+
+                samples.add(sample);
+                report.write(sample);
+                CliOutput.println(String.format(Locale.ROOT,
+                        "cycle %d: load p50 %d us, command p50 %d us, heap %d KB, metaspace %d KB, "
+                                + "%d classes, %d modules pending collection",
+                        cycle, sample.loadP50Micros(), sample.commandP50Micros(),
+                        sample.heapUsedBytes() / 1024, sample.metaspaceUsedBytes() / 1024,
+                        sample.loadedClasses(), sample.pendingModules()));
+
+                windowStart = System.nanoTime();
+                windowCycles = 0;
+            }
+        }
+
+        List<String> leakedModules = loaderCore.findLeakedModules().stream()
+                .map(LoaderCore.LeakedModule::module)
+                .toList();
+
+        return summarize(cycle, System.nanoTime() - start, leakedModules);
+    }
+
+    private void runCycle(Path directory, String plugin, List<String> commands) {
+        long start = System.nanoTime();
+
+        try {
+            if (!options.scanCache()) {
+                loaderCore.getModuleScanCache().invalidate(plugin);
+                start = System.nanoTime();
+            }
+
+            if (!loaderCore.loadModule(directory.toString(), plugin, options.lazy())) {
+                throw new Exception("Module " + plugin + " not found");
+            }
+        } catch (Error | Exception e) {
+            abort("Error loading module " + plugin + ": "
+                    + Objects.requireNonNullElse(e.getMessage(), e.getClass().getName()));
+            return;
+        }
+
+        loadTimes.record(System.nanoTime() - start);
+
+        for (int execution = 0; execution < options.executions(); execution++) {
+            for (String command : commands) {
+                long commandStart = System.nanoTime();
+
+                String error;
+
+                try {
+                    error = commandCollection.executeCommand(command + " " + execution)
+                            ? null
+                            : "Command " + command + " reported a failure";
+                } catch (Exception e) {
+                    error = Objects.requireNonNullElse(e.getMessage(), "UNKNOWN ERROR");
+                }
+
+                if (error == null) {
+                    commandTimes.record(System.nanoTime() - commandStart);
+                } else {
+                    // A failing command is reported, but doesn't stop the test.
+                    failures++;
+                    firstError = Objects.requireNonNullElse(firstError, error);
+                }
+            }
+        }
+
+        long unloadStart = System.nanoTime();
+
+        if (!loaderCore.unloadModule(plugin)) {
+            abort("Module " + plugin + " wasn't loaded");
+            return;
+        }
+
+        unloadTimes.record(System.nanoTime() - unloadStart);
+        unloadedModules++;
+    }
+
+    private void abort(String message) {
+        failures++;
+        firstError = Objects.requireNonNullElse(firstError, message);
+        aborted = true;
+    }
+
+    private SoakReport.Sample sample(long cycle, long elapsedNanos, long windowCycles, long windowNanos) {
+        // Only what survives a collection counts, or garbage would look like
+        // a leak.
+        System.gc();
+
+        long collected = loaderCore.getCollectedModuleCount();
+        SoakReport.Sample sample = new SoakReport.Sample(cycle, elapsedNanos / 1_000_000,
+                windowNanos > 0 ? windowCycles * 1e9 / windowNanos : 0,
+                loadTimes.getValueAtPercentile(50) / 1000, loadTimes.getValueAtPercentile(99) / 1000,
+                loadTimes.getMax() / 1000,
+                unloadTimes.getValueAtPercentile(50) / 1000, unloadTimes.getMax() / 1000,
+                commandTimes.getCount(), commandTimes.getValueAtPercentile(50) / 1000,
+                commandTimes.getValueAtPercentile(99) / 1000, commandTimes.getMax() / 1000,
+                memoryBean.getHeapMemoryUsage().getUsed(),
+                metaspacePool != null ? metaspacePool.getUsage().getUsed() : -1,
+                classLoadingBean.getLoadedClassCount(), classLoadingBean.getUnloadedClassCount(),
+                collected, Math.max(unloadedModules - collected, 0), failures);
+
+        loadTimes.reset();
+        unloadTimes.reset();
+        commandTimes.reset();
+
+        return sample;
+    }
+
+    private SoakReport.Summary summarize(long cycles, long elapsedNanos, List<String> leakedModules) {
+        // The first sample includes the warm-up of the JVM and the loader.
+        List<SoakReport.Sample> steady = samples.size() > 2 ? samples.subList(1, samples.size()) : samples;
+        double heapSlope = slope(steady, SoakReport.Sample::heapUsedBytes) * 1000;
+        double metaspaceSlope = metaspacePool != null
+                ? slope(steady, SoakReport.Sample::metaspaceUsedBytes) * 1000
+                : 0;
+        double classSlope = slope(steady, SoakReport.Sample::loadedClasses) * 1000;
+        double loadGrowth = growth(steady, SoakReport.Sample::loadP50Micros);
+        double commandGrowth = growth(steady, SoakReport.Sample::commandP50Micros);
+
+        return new SoakReport.Summary(cycles, elapsedNanos / 1_000_000, failures, firstError,
+                heapSlope, metaspaceSlope, classSlope, loadGrowth, commandGrowth, leakedModules,
+                !leakedModules.isEmpty() || classSlope >= LEAK_CLASSES_PER_KILO_CYCLE,
+                loadGrowth >= SUPERLINEAR_GROWTH || commandGrowth >= SUPERLINEAR_GROWTH);
+    }
+
+    /**
+     * Fits a line to a figure of the samples by least squares.
+     *
+     * @param samples The samples.
+     * @param figure The figure.
+     *
+     * @return How much the figure grows per cycle, or 0 with fewer than two
+     *      samples.
+     */
+    private static double slope(List<SoakReport.Sample> samples,
+                                ToLongFunction<SoakReport.Sample> figure) {
+        if (samples.size() < 2) {
+            return 0;
+        }
+
+        double meanCycle = samples.stream().mapToLong(SoakReport.Sample::cycle).average().orElse(0);
+        double meanFigure = samples.stream().mapToLong(figure).average().orElse(0);
+        double covariance = 0;
+        double variance = 0;
+
+        for (SoakReport.Sample sample : samples) {
+            double cycleDelta = sample.cycle() - meanCycle;
+
+            covariance += cycleDelta * (figure.applyAsLong(sample) - meanFigure);
+            variance += cycleDelta * cycleDelta;
+        }
+
+        return variance > 0 ? covariance / variance : 0;
+    }
+
+    /**
+     * Compares a timing of the last sample with the one of the first.
+     *
+     * @param samples The samples.
+     * @param figure The timing.
+     *
+     * @return The ratio between both, or 1 if there aren't enough samples.
+     */
+    private static double growth(List<SoakReport.Sample> samples,
+                                 ToLongFunction<SoakReport.Sample> figure) {
+        if (samples.size() < 2) {
+            return 1;
+        }
+
+        // Timings under a microsecond are rounded up, so noise isn't growth.
+        long first = Math.max(figure.applyAsLong(samples.get(0)), 1);
+        long last = Math.max(figure.applyAsLong(samples.get(samples.size() - 1)), 1);
+
+        return (double) last / first;
+    }
+}
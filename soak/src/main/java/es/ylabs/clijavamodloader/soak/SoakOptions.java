@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.soak;
+
+/**
+ * Command line options of the plugin generator and the soak driver.
+ *
+ * @param directory The directory the plugins are generated in, or null to use
+ *                  a temporary one.
+ * @param plugins How many plugins are generated. The soak driver cycles
+ *                through them.
+ * @param shape The size of every plugin.
+ * @param cycles How many load/execute/unload cycles the soak driver runs.
+ * @param executions How many times every command is run in each cycle.
+ * @param sampleEvery How many cycles there are between samples of the report.
+ * @param lazy Whether the plugins are loaded lazily.
+ * @param scanCache Whether the module scan cache is used, or every load scans
+ *                  the plugin again.
+ * @param reportFile The JSON Lines file the soak report is written to.
+ */
+record SoakOptions(String directory, int plugins, SyntheticPluginGenerator.Shape shape, int cycles,
+                   int executions, int sampleEvery, boolean lazy, boolean scanCache, String reportFile) {
+
+    private static final String OPTION_DIRECTORY = "--directory";
+    private static final String OPTION_PLUGINS = "--plugins";
+    private static final String OPTION_CLASSES = "--classes";
+    private static final String OPTION_GROUPS = "--groups";
+    private static final String OPTION_COMMANDS = "--commands";
+    private static final String OPTION_DEPENDENCY_KB = "--dependency-kb";
+    private static final String OPTION_NO_INDEX = "--no-index";
+    private static final String OPTION_CYCLES = "--cycles";
+    private static final String OPTION_EXECUTIONS = "--executions";
+    private static final String OPTION_SAMPLE_EVERY = "--sample-every";
+    private static final String OPTION_LAZY = "--lazy";
+    private static final String OPTION_NO_SCAN_CACHE = "--no-scan-cache";
+    private static final String OPTION_REPORT = "--report";
+
+    private static final String DEFAULT_REPORT_FILE = "soak-report.jsonl";
+
+    /**
+     * Parses the command line options.
+     *
+     * @param args The command line arguments.
+     *
+     * @return The parsed options.
+     * @throws Exception If an option is unknown, lacks its value or has an
+     *      invalid one.
+     */
+    static SoakOptions parse(String[] args) throws Exception {
+        String directory = null;
+        int plugins = 4;
+        int classes = 200;
+        int groups = 10;
+        int commands = 10;
+        int dependencyKb = 512;
+        boolean indexed = true;
+        int cycles = 1000;
+        int executions = 1;
+        int sampleEvery = 50;
+        boolean lazy = false;
+        boolean scanCache = true;
+        String reportFile = DEFAULT_REPORT_FILE;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case OPTION_DIRECTORY -> directory = value(args, ++i);
+                case OPTION_PLUGINS -> plugins = positive(args, ++i);
+                case OPTION_CLASSES -> classes = positive(args, ++i);
+                case OPTION_GROUPS -> groups = positive(args, ++i);
+                case OPTION_COMMANDS -> commands = positive(args, ++i);
+                case OPTION_DEPENDENCY_KB -> dependencyKb = nonNegative(args, ++i);
+                case OPTION_NO_INDEX -> indexed = false;
+                case OPTION_CYCLES -> cycles = positive(args, ++i);
+                case OPTION_EXECUTIONS -> executions = nonNegative(args, ++i);
+                case OPTION_SAMPLE_EVERY -> sampleEvery = positive(args, ++i);
+                case OPTION_LAZY -> lazy = true;
+                case OPTION_NO_SCAN_CACHE -> scanCache = false;
+                case OPTION_REPORT -> reportFile = value(args, ++i);
+                default -> throw new Exception("Unknown option " + args[i]);
+            }
+        }
+
+        if (groups > classes) {
+            throw new Exception("There can't be more command groups than classes");
+        }
+
+        return new SoakOptions(directory, plugins,
+                new SyntheticPluginGenerator.Shape(classes, groups, commands, dependencyKb, indexed),
+                cycles, executions, sampleEvery, lazy, scanCache, reportFile);
+    }
+
+    private static String value(String[] args, int index) throws Exception {
+        if (index >= args.length) {
+            throw new Exception("Missing value for " + args[index - 1]);
+        }
+
+        return args[index];
+    }
+
+    private static int nonNegative(String[] args, int index) throws Exception {
+        String value = value(args, index);
+
+        try {
+            int number = Integer.parseInt(value);
+
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+
+        throw new Exception("Invalid value " + value + " for " + args[index - 1]);
+    }
+
+    private static int positive(String[] args, int index) throws Exception {
+        int number = nonNegative(args, index);
+
+        if (number == 0) {
+            throw new Exception("Invalid value 0 for " + args[index - 1]);
+        }
+
+        return number;
+    }
+}
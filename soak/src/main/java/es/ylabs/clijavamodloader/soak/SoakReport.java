@@ -0,0 +1,223 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.soak;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Machine-readable report of a soak test, in JSON Lines: one object per
+ * sample, taken every few cycles, and a summary object at the end. Every
+ * object has a {@code type} field telling which one it is.
+ */
+final class SoakReport implements Closeable {
+
+    /**
+     * The state of the loader after a number of cycles. Timings are for the
+     * cycles since the previous sample, in microseconds; memory and class
+     * figures are taken after a garbage collection.
+     *
+     * @param cycle The number of cycles run.
+     * @param elapsedMillis The time since the soak test started.
+     * @param cyclesPerSecond The cycles per second since the previous sample.
+     * @param loadP50Micros The median time to load a plugin.
+     * @param loadP99Micros The 99th percentile of the time to load a plugin.
+     * @param loadMaxMicros The longest time to load a plugin.
+     * @param unloadP50Micros The median time to unload a plugin.
+     * @param unloadMaxMicros The longest time to unload a plugin.
+     * @param commands The number of commands run.
+     * @param commandP50Micros The median latency of a command.
+     * @param commandP99Micros The 99th percentile of the latency of a command.
+     * @param commandMaxMicros The longest latency of a command.
+     * @param heapUsedBytes The heap in use.
+     * @param metaspaceUsedBytes The metaspace in use, or -1 if unknown.
+     * @param loadedClasses The classes loaded now.
+     * @param unloadedClasses The classes unloaded since the JVM started.
+     * @param collectedModules The unloaded plugins whose class loaders have been
+     *                         garbage collected.
+     * @param pendingModules The unloaded plugins whose class loaders haven't
+     *                       been garbage collected yet.
+     * @param failures The number of failures so far.
+     */
+    record Sample(long cycle, long elapsedMillis, double cyclesPerSecond,
+                  long loadP50Micros, long loadP99Micros, long loadMaxMicros,
+                  long unloadP50Micros, long unloadMaxMicros,
+                  long commands, long commandP50Micros, long commandP99Micros, long commandMaxMicros,
+                  long heapUsedBytes, long metaspaceUsedBytes, long loadedClasses, long unloadedClasses,
+                  long collectedModules, long pendingModules, long failures) {
+    }
+
+    /**
+     * The outcome of a soak test. Growth rates are least-squares slopes over
+     * every sample but the first one, which includes the warm-up; growth
+     * ratios compare the median timings of the last sample with the ones of
+     * the second.
+     *
+     * @param cycles The number of cycles run.
+     * @param elapsedMillis How long the soak test took.
+     * @param failures The number of failures.
+     * @param firstError The message of the first failure, or null if none.
+     * @param heapBytesPerKiloCycle How much the heap in use grows every 1000 cycles.
+     * @param metaspaceBytesPerKiloCycle How much the metaspace in use grows
+     *                                   every 1000 cycles.
+     * @param classesPerKiloCycle How many loaded classes are added every 1000
+     *                            cycles.
+     * @param loadTimeGrowth How much slower loading a plugin got.
+     * @param commandLatencyGrowth How much slower running a command got.
+     * @param leakedModules The unloaded plugins whose class loaders couldn't
+     *                      be garbage collected.
+     * @param leakSuspected Whether plugins leak, or classes pile up.
+     * @param superlinearSuspected Whether loading plugins or running commands
+     *                             gets slower as cycles go by.
+     */
+    record Summary(long cycles, long elapsedMillis, long failures, String firstError,
+                   double heapBytesPerKiloCycle, double metaspaceBytesPerKiloCycle, double classesPerKiloCycle,
+                   double loadTimeGrowth, double commandLatencyGrowth, List<String> leakedModules,
+                   boolean leakSuspected, boolean superlinearSuspected) {
+    }
+
+    private final BufferedWriter writer;
+
+    /**
+     * Creates the report file, replacing any previous one.
+     *
+     * @param file The report file.
+     *
+     * @throws IOException If the file can't be created.
+     */
+    SoakReport(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a sample. It's flushed at once, so the report can be followed
+     * while the test runs and survives a crash of the JVM.
+     *
+     * @param sample The sample.
+     *
+     * @throws IOException If it can't be written.
+     */
+    void write(Sample sample) throws IOException {
+        writeLine("sample", sample);
+    }
+
+    /**
+     * Writes the summary.
+     *
+     * @param summary The summary.
+     *
+     * @throws IOException If it can't be written.
+     */
+    void write(Summary summary) throws IOException {
+        writeLine("summary", summary);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeLine(String type, Record record) throws IOException {
+        StringBuilder line = new StringBuilder("{\"type\":");
+        appendValue(line, type);
+
+        for (RecordComponent component : record.getClass().getRecordComponents()) {
+            line.append(",\"").append(component.getName()).append("\":");
+
+            try {
+                appendValue(line, component.getAccessor().invoke(record));
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Unable to read " + component.getName(), e);
+            }
+        }
+
+        writer.write(line.append('}').toString());
+        writer.newLine();
+        writer.flush();
+    }
+
+    private static void appendValue(StringBuilder line, Object value) {
+        if (value == null) {
+            line.append("null");
+        } else if (value instanceof Double number) {
+            // JSON has no infinities nor NaN.
+            line.append(number.isNaN() || number.isInfinite() ? "null" : number.toString());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            line.append(value);
+        } else if (value instanceof List<?> list) {
+            line.append('[');
+
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+
+                appendValue(line, list.get(i));
+            }
+
+            line.append(']');
+        } else {
+            appendString(line, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+
+            switch (character) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (character < 0x20) {
+                        line.append(String.format(Locale.ROOT, "\\u%04x", (int) character));
+                    } else {
+                        line.append(character);
+                    }
+                }
+            }
+        }
+
+        line.append('"');
+    }
+}
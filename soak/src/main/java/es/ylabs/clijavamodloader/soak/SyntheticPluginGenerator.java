@@ -0,0 +1,331 @@
+/*
+ * MIT License
+ *
+ * Copyright 2024 Yago Mouriño Mendaña <ylabs82@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+
+package es.ylabs.clijavamodloader.soak;
+
+import es.ylabs.clijavamodloader.annotations.CliCommand;
+import es.ylabs.clijavamodloader.helpers.ANSIHelpers;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates synthetic plugin JARs of a configurable size.
+ * <p>
+ * A plugin has a number of classes, some of them command groups with the same
+ * number of commands each, and the rest plain classes. Bundled dependencies
+ * are simulated by a shaded package of classes holding incompressible
+ * constants, which the commands call so they are loaded like a real library
+ * would be. The benchmarks build their synthetic modules with it too.
+ */
+public final class SyntheticPluginGenerator {
+
+    /**
+     * The size of a synthetic plugin.
+     *
+     * @param classes The number of classes, command groups included.
+     * @param groups How many of those classes are command groups.
+     * @param commandsPerGroup The number of commands of each group.
+     * @param dependencyKb The approximate size of the bundled dependencies, in
+     *                     kilobytes, or 0 for none.
+     * @param indexed Whether the plugin includes a command index.
+     */
+    public record Shape(int classes, int groups, int commandsPerGroup, int dependencyKb, boolean indexed) {
+
+        public Shape {
+            if (classes < 1 || groups < 1 || groups > classes || commandsPerGroup < 1 || dependencyKb < 0) {
+                throw new IllegalArgumentException("Invalid plugin shape");
+            }
+        }
+
+        /**
+         * Returns the number of shaded dependency classes.
+         *
+         * @return The number of classes needed for the dependency weight.
+         */
+        int dependencyClasses() {
+            return (dependencyKb + PAYLOAD_KB - 1) / PAYLOAD_KB;
+        }
+    }
+
+    private static final String PACKAGE = "synthetic";
+    private static final String SHADED_PACKAGE = PACKAGE + ".shaded";
+    private static final String PLUGIN_PREFIX = "synthetic-";
+    private static final String PLUGIN_SUFFIX = ".jar";
+    // String constants are limited to 64 KB, so the weight is split.
+    private static final int PAYLOAD_KB = 32;
+    private static final String PAYLOAD_CHARACTERS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    private SyntheticPluginGenerator() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            SoakOptions options = SoakOptions.parse(args);
+
+            if (options.directory() == null) {
+                throw new Exception("Missing --directory");
+            }
+
+            Path directory = Files.createDirectories(Path.of(options.directory()));
+
+            for (int i = 0; i < options.plugins(); i++) {
+                Path plugin = generate(directory, pluginName(i), options.shape());
+                ANSIHelpers.printGreenAndBold("Plugin " + plugin + " generated ("
+                        + Files.size(plugin) + " bytes)");
+            }
+        } catch (Exception e) {
+            ANSIHelpers.printRedAndBold(Objects.requireNonNullElse(e.getMessage(),
+                    "UNKNOWN ERROR"));
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Returns the file name of a generated plugin.
+     *
+     * @param index The index of the plugin.
+     *
+     * @return The file name of the plugin JAR.
+     */
+    public static String pluginName(int index) {
+        return PLUGIN_PREFIX + index + PLUGIN_SUFFIX;
+    }
+
+    /**
+     * Returns the commands of a generated plugin.
+     *
+     * @param plugin The file name of the plugin JAR.
+     * @param shape The size of the plugin.
+     *
+     * @return The names of its commands.
+     */
+    public static List<String> commandNames(String plugin, Shape shape) {
+        String prefix = plugin.replace(PLUGIN_SUFFIX, "");
+        List<String> commands = new ArrayList<>(shape.groups() * shape.commandsPerGroup());
+
+        for (int group = 0; group < shape.groups(); group++) {
+            for (int command = 0; command < shape.commandsPerGroup(); command++) {
+                commands.add(prefix + '-' + group + '-' + command);
+            }
+        }
+
+        return commands;
+    }
+
+    /**
+     * Compiles a synthetic plugin and packages it as a JAR.
+     *
+     * @param directory The directory where the JAR is created.
+     * @param plugin The file name of the JAR.
+     * @param shape The size of the plugin.
+     *
+     * @return The path of the JAR.
+     * @throws IOException If the plugin can't be compiled or packaged.
+     */
+    public static Path generate(Path directory, String plugin, Shape shape) throws IOException {
+        Path sources = Files.createTempDirectory("synthetic-sources");
+        Path classes = Files.createTempDirectory("synthetic-classes");
+
+        try {
+            List<String> sourceFiles = writeSources(sources, plugin, shape);
+            compile(plugin, shape, classes, sourceFiles);
+
+            return packageJar(directory.resolve(plugin), classes);
+        } finally {
+            delete(sources);
+            delete(classes);
+        }
+    }
+
+    private static List<String> writeSources(Path sources, String plugin, Shape shape) throws IOException {
+        Path packageDirectory = Files.createDirectories(sources.resolve(PACKAGE));
+        Path shadedDirectory = Files.createDirectories(sources.resolve(SHADED_PACKAGE.replace('.', '/')));
+        List<String> commands = commandNames(plugin, shape);
+        List<String> sourceFiles = new ArrayList<>();
+        int dependencyClasses = shape.dependencyClasses();
+        // Seeded by the name, so the same plugin is always generated the same.
+        Random random = new Random(plugin.hashCode());
+
+        for (int i = 0; i < dependencyClasses; i++) {
+            int kilobytes = Math.min(PAYLOAD_KB, shape.dependencyKb() - i * PAYLOAD_KB);
+            Path sourceFile = shadedDirectory.resolve("Dependency" + i + ".java");
+
+            Files.writeString(sourceFile, dependencySource("Dependency" + i, payload(random, kilobytes)));
+            sourceFiles.add(sourceFile.toString());
+        }
+
+        for (int i = 0; i < shape.classes(); i++) {
+            boolean group = i < shape.groups();
+            String className = (group ? "Group" : "Filler") + i;
+            Path sourceFile = packageDirectory.resolve(className + ".java");
+
+            Files.writeString(sourceFile, group
+                    ? groupSource(className, commands.subList(i * shape.commandsPerGroup(),
+                            (i + 1) * shape.commandsPerGroup()),
+                            dependencyClasses > 0 ? "Dependency" + (i % dependencyClasses) : null)
+                    : fillerSource(className));
+            sourceFiles.add(sourceFile.toString());
+        }
+
+        return sourceFiles;
+    }
+
+    private static void compile(String plugin, Shape shape, Path classes, List<String> sourceFiles)
+            throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+        if (compiler == null) {
+            throw new IOException("A JDK is needed to generate plugins");
+        }
+
+        String libraryPath;
+
+        try {
+            // The location is a URL, so any special character in it is escaped.
+            libraryPath = Path.of(CliCommand.class.getProtectionDomain().getCodeSource().getLocation()
+                    .toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new IOException("Unable to locate the mod library", e);
+        }
+
+        List<String> arguments = new ArrayList<>(List.of(
+                "-classpath", libraryPath,
+                "-d", classes.toString()));
+
+        if (shape.indexed()) {
+            arguments.addAll(List.of("-processorpath", libraryPath));
+        } else {
+            arguments.add("-proc:none");
+        }
+
+        arguments.addAll(sourceFiles);
+
+        if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+            throw new IOException("Unable to compile synthetic plugin " + plugin);
+        }
+    }
+
+    private static Path packageJar(Path jar, Path classes) throws IOException {
+        // Written next to the JAR and then moved, so a watcher never sees
+        // half of it.
+        Path temporaryJar = jar.resolveSibling(jar.getFileName() + ".tmp");
+
+        try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(temporaryJar));
+             Stream<Path> files = Files.walk(classes)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                output.putNextEntry(new JarEntry(classes.relativize(file).toString()
+                        .replace(File.separatorChar, '/')));
+                Files.copy(file, output);
+                output.closeEntry();
+            }
+        }
+
+        return Files.move(temporaryJar, jar, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes a directory and everything in it.
+     *
+     * @param directory The directory to delete.
+     *
+     * @throws IOException If the directory can't be deleted.
+     */
+    public static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static String payload(Random random, int kilobytes) {
+        char[] payload = new char[kilobytes * 1024];
+
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = PAYLOAD_CHARACTERS.charAt(random.nextInt(PAYLOAD_CHARACTERS.length()));
+        }
+
+        return new String(payload);
+    }
+
+    private static String dependencySource(String className, String payload) {
+        return "package " + SHADED_PACKAGE + ";\n"
+                + "public final class " + className + " {\n"
+                + "    private static final String PAYLOAD = \"" + payload + "\";\n"
+                + "    public static int weigh(int seed) {\n"
+                + "        return PAYLOAD.charAt(Math.floorMod(seed, PAYLOAD.length())) + seed;\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    private static String groupSource(String className, List<String> commands, String dependency) {
+        StringBuilder source = new StringBuilder()
+                .append("package ").append(PACKAGE).append(";\n")
+                .append("@es.ylabs.clijavamodloader.annotations.CliCommandGroup\n")
+                .append("public class ").append(className).append(" {\n")
+                .append("    private long calls;\n");
+
+        for (int i = 0; i < commands.size(); i++) {
+            source.append("    @es.ylabs.clijavamodloader.annotations.CliCommand(command = \"")
+                    .append(commands.get(i)).append("\")\n")
+                    .append("    public void command").append(i).append("(String[] args) {\n")
+                    .append(dependency != null
+                            ? "        calls += " + SHADED_PACKAGE + '.' + dependency + ".weigh(args.length);\n"
+                            : "        calls += args.length;\n")
+                    .append("    }\n");
+        }
+
+        return source.append("}\n").toString();
+    }
+
+    private static String fillerSource(String className) {
+        return "package " + PACKAGE + ";\n"
+                + "public class " + className + " {\n"
+                + "    public int value(int input) {\n"
+                + "        return input * 31 + " + className.hashCode() + ";\n"
+                + "    }\n"
+                + "}\n";
+    }
+}